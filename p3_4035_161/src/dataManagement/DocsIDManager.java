@@ -1,9 +1,18 @@
 package dataManagement;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Hashtable;
+import java.util.PriorityQueue;
 
 import generalClasses.P3Utils;
 
@@ -12,17 +21,47 @@ import generalClasses.P3Utils;
  * system. It has instance an variable dedicated to store the names of documents
  * added.
  * 
+ * Besides the list of names, indexed by id, it keeps a map from names to ids
+ * and a priority queue of the ids that are free, so that finding a document
+ * takes constant time, and adding or removing one O(log n) time, where n is
+ * the number of ids. All the methods are synchronized, so that searches may
+ * read the names while documents are added or removed.
+ * 
+ * The names are saved in file docs_ID.pp3: MAGIC, number of ids n, a table
+ * of n + 1 locations in the file, and the names of the documents, in UTF-8,
+ * one after the other; the name of document docID is between the locations
+ * docID - 1 and docID of the table, and it is empty if the id is free. The
+ * file is read with one read (it is not mapped, since save() replaces it),
+ * and a name is decoded only when it is needed. To find a document by name,
+ * the ids of the names in the file are put, the first time, in a hash table
+ * by the hash of their bytes; the name looked for is compared, as bytes, with
+ * the few names of its slots only. The map from names to ids has only the
+ * names given since the file was read. Files of previous versions of the
+ * system, where each id had a record of NAMELENGTH bytes for its name (padded
+ * with spaces) and the id, are read too, and saved in the new format next
+ * time.
+ * 
  * @author Joel Torres
  *
  */
 public class DocsIDManager {
-	public static final int NAMELENGTH = 20;
+	private static final int MAGIC = 0x23503344; // "#P3D"; can't begin a name
+	private static final int NAMELENGTH = 20; // of files of previous versions
 	private static final int RECSIZE = NAMELENGTH + 4; // 20+4
 	private static DocsIDManager instance = null;
 
-	private ArrayList<String> docNamesList;
+	private ArrayList<String> docNamesList; // name of docID at docID - 1;
+											// "" if free; null if not yet
+											// decoded from registry
+	private ByteBuffer registry; // content of file read; null if none
+	private Hashtable<String, Integer> docIDs; // docID of each name given
+												// since registry was read
+	private int[] nameTable; // ids of names in registry, by hash; null until
+								// needed
+	private BitSet replaced; // ids whose name in registry is not theirs
+	private PriorityQueue<Integer> freeDocIDs; // smallest one given first
+	private HashSet<Integer> reservedDocIDs; // removed, but not yet released
 	private File fPath;
-	private RandomAccessFile file;
 	private boolean modified; // to remember if modifications have been made...
 	// needed to writeback to file is needed....
 
@@ -35,7 +74,7 @@ public class DocsIDManager {
 	 *             may throw this exception which is really thrown at the
 	 *             DocsIDManager constructor
 	 */
-	public static DocsIDManager getInstance() throws IOException {
+	public static synchronized DocsIDManager getInstance() throws IOException {
 		if (instance == null)
 			instance = new DocsIDManager();
 		return instance;
@@ -44,7 +83,8 @@ public class DocsIDManager {
 	/**
 	 * DocsIDManager default constructor. Initializes this type of object by
 	 * reseting the modified status boolean variable and initializing the
-	 * docNamesList.
+	 * docNamesList from file docs_ID.pp3, if it exists. Only the table of
+	 * locations is looked at, to find the free ids.
 	 * 
 	 * @throws IOException
 	 *             may throw this exception if an Input/Output error occurs
@@ -52,49 +92,193 @@ public class DocsIDManager {
 	 */
 	private DocsIDManager() throws IOException {
 		modified = false;
-		String fName = "docs_ID.pp3";
-		fPath = new File(P3Utils.IndexDirectoryPath, fName);
-		if (fPath.exists()) {
-			file = new RandomAccessFile(fPath, "r");
+		reservedDocIDs = new HashSet<>();
+		freeDocIDs = new PriorityQueue<>();
+		docIDs = new Hashtable<>();
+		replaced = new BitSet();
+		fPath = new File(P3Utils.IndexDirectoryPath, "docs_ID.pp3");
+		if (!fPath.exists()) {
+			docNamesList = new ArrayList<String>();
+			return;
+		}
 
-			int listSize = (int) (file.length() / RECSIZE);
+		ByteBuffer content = ByteBuffer.wrap(Files.readAllBytes(fPath.toPath()));
+		if (content.limit() >= 8 && content.getInt(0) == MAGIC) {
+			registry = content;
+			int listSize = registry.getInt(4);
 			docNamesList = new ArrayList<String>(listSize);
-			// fill list with empty strings...
-			for (int i = 0; i < listSize; i++)
-				docNamesList.add("");
-			readListContentFromFile();
-			file.close();
-		} else
-			docNamesList = new ArrayList<String>();
+			for (int i = 0; i < listSize; i++) {
+				if (nameLength(i + 1) == 0) {
+					docNamesList.add("");
+					freeDocIDs.add(i + 1);
+				} else
+					docNamesList.add(null); // decoded when needed
+			}
+		} else {
+			readRecords(content);
+			for (int i = 0; i < docNamesList.size(); i++)
+				if (docNamesList.get(i).equals(""))
+					freeDocIDs.add(i + 1);
+				else
+					docIDs.put(docNamesList.get(i), i + 1);
+			modified = true; // saved in the new format
+		}
 	}
 
 	/**
-	 * Reads Random Access File docsID.pp3 and adds its info (name and id)
-	 * to docNamesList.
+	 * Reads the content of a file docs_ID.pp3 of previous versions of the
+	 * system, made of records (name, id), and fills docNamesList.
 	 * 
-	 * @throws IOException
-	 *             may throw this exception if an Input/Output error occurs
-	 *             while accessing the index directory.
+	 * @param content
+	 *            the content of the file
 	 */
-	private void readListContentFromFile() throws IOException {
-		long fileLength = file.length();
-		boolean completed = false;
-		while (!completed) { // this can also be based on docNamesList.size()..,
-			try {
-				String name = readName();
-				int docID = file.readInt();
-				docNamesList.set(docID - 1, name); // docID can't be zero
-			} catch (IOException e) {
-				if (file.getFilePointer() == fileLength)
-					completed = true;
-				else
-					e.printStackTrace();
-			}
+	private void readRecords(ByteBuffer content) {
+		int listSize = content.limit() / RECSIZE;
+		docNamesList = new ArrayList<String>(listSize);
+		// fill list with empty strings...
+		for (int i = 0; i < listSize; i++)
+			docNamesList.add("");
+		for (int r = 0; r < listSize; r++) {
+			int location = r * RECSIZE;
+			int length = 0; // the name ends at the first space
+			while (length < NAMELENGTH && content.get(location + length) != ' ')
+				length++;
+			char[] name = new char[length];
+			for (int i = 0; i < length; i++)
+				name[i] = (char) content.get(location + i);
+			int docID = content.getInt(location + NAMELENGTH);
+			if (docID >= 1 && docID <= listSize) // docID can't be zero
+				docNamesList.set(docID - 1, new String(name));
+		}
+	}
+
+	/**
+	 * Location in registry of the name of a document.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @return the location
+	 */
+	private int nameLocation(int docID) {
+		return registry.getInt(8 + 4 * (docID - 1));
+	}
+
+	/**
+	 * Length in bytes, in registry, of the name of a document.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @return the length; 0 if the id is free
+	 */
+	private int nameLength(int docID) {
+		return nameLocation(docID + 1) - nameLocation(docID);
+	}
+
+	/**
+	 * Gets the name of a document, decoding it from registry the first time.
+	 * 
+	 * @param docID
+	 *            id of the document, which must be in range
+	 * @return the name; "" if the id is free
+	 */
+	private String name(int docID) {
+		String name = docNamesList.get(docID - 1);
+		if (name == null) {
+			name = new String(registry.array(), nameLocation(docID), nameLength(docID), StandardCharsets.UTF_8);
+			docNamesList.set(docID - 1, name);
+		}
+		return name;
+	}
+
+	/**
+	 * Finds the id of a document by its name: among the names given since
+	 * registry was read, and then among the names in registry that are still
+	 * those of their ids (see makeNameTable()).
+	 * 
+	 * @param name
+	 *            name of the document
+	 * @return the id; null if no document has that name
+	 */
+	private Integer findDocID(String name) {
+		Integer docID = docIDs.get(name);
+		if (docID != null || registry == null)
+			return docID;
+		if (nameTable == null)
+			makeNameTable();
+		byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+		int mask = nameTable.length - 1;
+		int slot = hashOf(bytes, 0, bytes.length) & mask;
+		while (nameTable[slot] != 0) {
+			int candidate = nameTable[slot];
+			if (!replaced.get(candidate) && hasName(candidate, bytes))
+				return candidate;
+			slot = (slot + 1) & mask;
 		}
+		return null;
+	}
+
+	/**
+	 * Makes the hash table of the ids of the names in registry, by the hash
+	 * of the bytes of their names, with linear probing. The names are not
+	 * decoded.
+	 */
+	private void makeNameTable() {
+		int listSize = registry.getInt(4);
+		int numberOfNames = 0;
+		for (int docID = 1; docID <= listSize; docID++)
+			if (nameLength(docID) > 0)
+				numberOfNames++;
+		nameTable = new int[Integer.highestOneBit(Math.max(1, 2 * numberOfNames)) << 1];
+		int mask = nameTable.length - 1;
+		for (int docID = 1; docID <= listSize; docID++)
+			if (nameLength(docID) > 0) {
+				int slot = hashOf(registry.array(), nameLocation(docID), nameLength(docID)) & mask;
+				while (nameTable[slot] != 0)
+					slot = (slot + 1) & mask;
+				nameTable[slot] = docID;
+			}
+	}
+
+	/**
+	 * Determines if the name of a document in registry has the given bytes.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @param bytes
+	 *            the name in UTF-8
+	 * @return true if the same, false otherwise
+	 */
+	private boolean hasName(int docID, byte[] bytes) {
+		if (nameLength(docID) != bytes.length)
+			return false;
+		int location = nameLocation(docID);
+		for (int i = 0; i < bytes.length; i++)
+			if (registry.get(location + i) != bytes[i])
+				return false;
+		return true;
 	}
 
 	/**
-	 * Adds the name of a new document to the docs list. .
+	 * Hash of a sequence of bytes.
+	 * 
+	 * @param bytes
+	 *            array of the bytes
+	 * @param offset
+	 *            location of the first byte
+	 * @param length
+	 *            number of bytes
+	 * @return the hash
+	 */
+	private static int hashOf(byte[] bytes, int offset, int length) {
+		int hash = 0;
+		for (int i = offset; i < offset + length; i++)
+			hash = 31 * hash + bytes[i];
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * Adds the name of a new document to the docs list. It is given the
+	 * smallest free id, if any.
 	 * 
 	 * @param name
 	 *            the name of the new document
@@ -103,19 +287,20 @@ public class DocsIDManager {
 	 *         In that case, the value returned is the id number for the new
 	 *         document,
 	 */
-	public int addDocument(String name) {
-		int newID = -1;
-		for (int i = 0; i < docNamesList.size(); i++) {
-			if (newID == -1 && docNamesList.get(i).equals(""))
-				newID = i + 1; // zero can't be a doc id
-			else if (docNamesList.get(i).equals(name))
-				return -1; // the document exists
-		}
-		if (newID == -1) {
+	public synchronized int addDocument(String name) {
+		if (findDocID(name) != null)
+			return -1; // the document exists
+
+		Integer newID = freeDocIDs.poll();
+		while (newID != null && (hasDocument(newID) || reservedDocIDs.contains(newID)))
+			newID = freeDocIDs.poll(); // given by restoreDocument()
+		if (newID == null) {
 			docNamesList.add(name);
 			newID = docNamesList.size(); // zero can't be a doc id
 		} else
 			docNamesList.set(newID - 1, name);
+		docIDs.put(name, newID);
+		replaced.set(newID);
 
 		modified = true;
 
@@ -125,7 +310,10 @@ public class DocsIDManager {
 
 	/**
 	 * Removes the docID given from the docNamesList and sets a blank string
-	 * where the name was for future addition of new documents.
+	 * where the name was for future addition of new documents. The id is
+	 * reserved, not given to a new document, until releaseDocID() is called,
+	 * since searches that began before the removal may still read the idx file
+	 * of the document.
 	 * 
 	 * @param docID
 	 *            the given docID to remove from file
@@ -133,37 +321,109 @@ public class DocsIDManager {
 	 *             may throw this exception if the given id is invalid (not in
 	 *             range).
 	 */
-	public void removeDocID(int docID) throws IllegalArgumentException {
-		try {
-			docNamesList.set(docID - 1, "");
-		} catch (IndexOutOfBoundsException e) {
+	public synchronized void removeDocID(int docID) throws IllegalArgumentException {
+		if (docID < 1 || docID > docNamesList.size())
 			throw new IllegalArgumentException("Invalid docID: " + docID);
+		String name = name(docID);
+		if (name.equals(""))
+			return; // already free
+		docNamesList.set(docID - 1, "");
+		docIDs.remove(name);
+		replaced.set(docID);
+		reservedDocIDs.add(docID);
+		modified = true;
+	}
+
+	/**
+	 * Allows the id of a removed document to be given to a new document.
+	 * 
+	 * @param docID
+	 *            the id, removed by removeDocID()
+	 */
+	public synchronized void releaseDocID(int docID) {
+		if (reservedDocIDs.remove(docID))
+			freeDocIDs.add(docID);
+	}
+
+	/**
+	 * Registers again a document added before the system stopped, with the
+	 * same id (see IndexLog). If the id was free, it is left in the queue of
+	 * free ids, and skipped when taken from it (see addDocument()).
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @param name
+	 *            name of the document
+	 */
+	public synchronized void restoreDocument(int docID, String name) {
+		while (docNamesList.size() < docID) {
+			docNamesList.add("");
+			freeDocIDs.add(docNamesList.size());
 		}
+		String previousName = name(docID);
+		if (!previousName.equals(""))
+			docIDs.remove(previousName);
+		docNamesList.set(docID - 1, name);
+		docIDs.put(name, docID);
+		replaced.set(docID);
+		reservedDocIDs.remove(docID);
 		modified = true;
 	}
 
 	/**
-	 * Prepares system for closing by saving all the info regarding docsID
-	 * needed for future execution.
+	 * Saves all the info regarding docsID, if modified. The file is written
+	 * completely in a temporary file, which then replaces it (see
+	 * P3Utils.replaceFile()). Names not yet decoded are copied as they are.
+	 * 
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
 	 */
-	public void close() {
-		// iterate over entries in map and write each one to file
+	public synchronized void save() throws IOException {
 		if (modified) {
+			int listSize = docNamesList.size();
+			byte[][] names = new byte[listSize][];
+			int location = 8 + 4 * (listSize + 1);
+			for (int docID = 1; docID <= listSize; docID++) {
+				String name = docNamesList.get(docID - 1);
+				if (name == null) {
+					names[docID - 1] = new byte[nameLength(docID)];
+					System.arraycopy(registry.array(), nameLocation(docID), names[docID - 1], 0,
+							names[docID - 1].length);
+				} else
+					names[docID - 1] = name.getBytes(StandardCharsets.UTF_8);
+			}
+
+			File tmpPath = new File(fPath.getPath() + ".tmp");
+			DataOutputStream file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpPath)));
 			try {
-				file = new RandomAccessFile(fPath, "rw");
-				file.seek(0);
-				for (int i = 0; i < docNamesList.size(); i++) {
-					writeNameToFile(docNamesList.get(i));
-					file.writeInt(i + 1);
+				file.writeInt(MAGIC);
+				file.writeInt(listSize);
+				for (byte[] name : names) {
+					file.writeInt(location);
+					location += name.length;
 				}
-				file.setLength(file.getFilePointer()); // truncate the length of
-														// the file
+				file.writeInt(location);
+				for (byte[] name : names)
+					file.write(name);
+			} finally {
 				file.close();
-			} catch (IOException e) {
-				e.printStackTrace();
 			}
+			P3Utils.replaceFile(tmpPath, fPath);
+			modified = false;
 		}
+	}
 
+	/**
+	 * Prepares system for closing by saving all the info regarding docsID
+	 * needed for future execution.
+	 */
+	public synchronized void close() {
+		try {
+			save();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 
 	/**
@@ -176,66 +436,62 @@ public class DocsIDManager {
 	 *             may throw this exception if the given id is invalid (not in
 	 *             range).
 	 */
-	public String getDocName(int docID) throws IllegalArgumentException {
-		try {
-			return docNamesList.get(docID - 1);
-		} catch (IndexOutOfBoundsException e) {
+	public synchronized String getDocName(int docID) throws IllegalArgumentException {
+		if (docID < 1 || docID > docNamesList.size())
 			throw new IllegalArgumentException("No indexed document has id = " + docID);
-		}
+		return name(docID);
 	}
 
 	/**
-	 * Writes the name of the file to the Random Access File one byte per
-	 * character and fills remaining spaces with blank characters.
+	 * Given the name of a document, returns its id.
 	 * 
 	 * @param name
-	 *            name of file to write
-	 * @throws IOException
-	 *             may throw this exception if an Input/Output error occurs
-	 *             while accessing the corresponding directory.
+	 *            name of the document
+	 * @return the id; -1 if no indexed document has that name
 	 */
-	private void writeNameToFile(String name) throws IOException {
-		for (int i = 0; i < name.length(); i++)
-			file.writeByte((byte) name.charAt(i));
-		for (int i = name.length(); i < NAMELENGTH; i++)
-			file.writeByte((byte) ' '); // fill with blanks remaining bytes...
+	public synchronized int getDocID(String name) {
+		Integer docID = findDocID(name);
+		return docID == null ? -1 : docID;
 	}
 
 	/**
-	 * Read next name from current file pointer in file.
+	 * Determines if an id is given to a document.
 	 * 
-	 * @param file
-	 *            the random access file corresponding to the main index
-	 * @return the next word
-	 * @throws IOException
-	 *             may throw this exception if an Input/Output error occurs
-	 *             while accessing the index directory.
+	 * @param docID
+	 *            the id
+	 * @return true if a document has the id, false if it is free or not in
+	 *         range
 	 */
-	private String readName() throws IOException {
-		String name = "";
-		char ch;
-		int i = 0;
-		while (i < NAMELENGTH) {
-			ch = (char) file.readByte();
-			i++;
-			if (ch != ' ')
-				name += ch;
-			else
-				while (i < NAMELENGTH) { // just position FP to next int
-					file.readByte();
-					i++;
-				}
-		}
-		return name; // returns "" if the name is just spaces
+	public synchronized boolean hasDocument(int docID) {
+		if (docID < 1 || docID > docNamesList.size())
+			return false;
+		String name = docNamesList.get(docID - 1);
+		return name == null || !name.equals("");
+	}
+
+	/**
+	 * Number of ids, given to documents or free; every id is between 1 and
+	 * this number.
+	 * 
+	 * @return the number of ids
+	 */
+	public synchronized int getNumberOfDocIDs() {
+		return docNamesList.size();
 	}
 
 	/**
-	 * Returns the docNamesList where all the documents names are.
+	 * Returns a copy of the docNamesList where all the documents names are,
+	 * as it is now; it does not change when documents are added or removed
+	 * later. The name of document docID is at index docID - 1, and is "" if
+	 * the id is free.
 	 * 
 	 * @return docNamesList list of documents names
 	 */
-	public ArrayList<String> getDocNamesList() {
-		return docNamesList;
+	public synchronized ArrayList<String> getDocNamesList() {
+		ArrayList<String> names = new ArrayList<>(docNamesList.size());
+		for (int docID = 1; docID <= docNamesList.size(); docID++)
+			names.add(name(docID));
+		return names;
 	}
 
 }
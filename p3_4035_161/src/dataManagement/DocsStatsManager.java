@@ -0,0 +1,246 @@
+package dataManagement;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import generalClasses.P3Utils;
+
+/**
+ * Keeps statistics and metadata of the documents in the index (see
+ * DocumentMetadata): the number of words in each document, needed to rank
+ * them without reading their idx files, and what is needed to know if their
+ * files changed since they were indexed. They are saved in file
+ * docs_stats.pp3: MAGIC, followed by a record per document: docID, number of
+ * words, generation, size, time of last modification and hash. All the
+ * methods are synchronized, so that searches may read the
+ * statistics while documents are added or removed.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class DocsStatsManager {
+	private static final int MAGIC = 0x50335432; // "P3T2"
+	private static DocsStatsManager instance = null;
+
+	private ArrayList<DocumentMetadata> metadata; // of document docID at index
+													// docID - 1; null if
+													// unknown
+	private int numberOfDocs; // documents with known number of words
+	private long totalNumberOfWords; // sum of their numbers of words
+	private File fPath;
+	private boolean modified; // to remember if modifications have been made
+
+	/**
+	 * Returns an instance of a DocsStatsManager object
+	 * 
+	 * @return instance of DocsStatsManager object if not null; if null,
+	 *         initializes and returns it.
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public static synchronized DocsStatsManager getInstance() throws IOException {
+		if (instance == null)
+			instance = new DocsStatsManager();
+		return instance;
+	}
+
+	/**
+	 * DocsStatsManager default constructor. Reads the statistics in
+	 * docs_stats.pp3, if that file exists.
+	 * 
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory, or if the file is not
+	 *             a stats file.
+	 */
+	private DocsStatsManager() throws IOException {
+		modified = false;
+		metadata = new ArrayList<>();
+		numberOfDocs = 0;
+		totalNumberOfWords = 0;
+		fPath = new File(P3Utils.IndexDirectoryPath, "docs_stats.pp3");
+		if (fPath.exists()) {
+			DataInputStream file = new DataInputStream(new BufferedInputStream(new FileInputStream(fPath)));
+			try {
+				if (file.readInt() != MAGIC)
+					throw new IOException("Not a stats file: " + fPath.getName());
+				while (true) {
+					int docID = file.readInt();
+					int numberOfWords = file.readInt();
+					int generation = file.readInt();
+					long size = file.readLong();
+					long lastModified = file.readLong();
+					setMetadata(docID,
+							new DocumentMetadata(numberOfWords, size, lastModified, file.readLong(), generation));
+				}
+			} catch (EOFException e) {
+				// all the records were read
+			} finally {
+				file.close();
+			}
+			modified = false;
+		}
+	}
+
+	/**
+	 * Registers the metadata of a document.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @param documentMetadata
+	 *            its metadata
+	 */
+	public synchronized void setMetadata(int docID, DocumentMetadata documentMetadata) {
+		removeDocID(docID);
+		while (metadata.size() < docID)
+			metadata.add(null);
+		metadata.set(docID - 1, documentMetadata);
+		numberOfDocs++;
+		totalNumberOfWords += documentMetadata.getNumberOfWords();
+		modified = true;
+	}
+
+	/**
+	 * Registers the number of words of a document, whose other metadata is
+	 * unknown.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @param numberOfWords
+	 *            total number of words in the document
+	 */
+	public synchronized void setNumberOfWords(int docID, int numberOfWords) {
+		setMetadata(docID, new DocumentMetadata(numberOfWords, DocumentMetadata.UNKNOWN, 0, 0, 0));
+	}
+
+	/**
+	 * Forgets the statistics of a document.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 */
+	public synchronized void removeDocID(int docID) {
+		DocumentMetadata documentMetadata = getMetadata(docID);
+		if (documentMetadata != null) {
+			metadata.set(docID - 1, null);
+			numberOfDocs--;
+			totalNumberOfWords -= documentMetadata.getNumberOfWords();
+			modified = true;
+		}
+	}
+
+	/**
+	 * Registers the metadata of a document in place of the given one, unless
+	 * the document got other metadata since it was read.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @param expected
+	 *            the metadata read before
+	 * @param documentMetadata
+	 *            its new metadata
+	 * @return true if registered, false otherwise
+	 */
+	public synchronized boolean replaceMetadata(int docID, DocumentMetadata expected,
+			DocumentMetadata documentMetadata) {
+		if (getMetadata(docID) != expected)
+			return false;
+		setMetadata(docID, documentMetadata);
+		return true;
+	}
+
+	/**
+	 * Getter for the metadata of a document.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @return the metadata; null if unknown
+	 */
+	public synchronized DocumentMetadata getMetadata(int docID) {
+		if (docID < 1 || docID > metadata.size())
+			return null;
+		return metadata.get(docID - 1);
+	}
+
+	/**
+	 * Getter for the number of words of a document.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @return the number of words; -1 if unknown
+	 */
+	public synchronized int getNumberOfWords(int docID) {
+		DocumentMetadata documentMetadata = getMetadata(docID);
+		return documentMetadata == null ? -1 : documentMetadata.getNumberOfWords();
+	}
+
+	/**
+	 * Number of documents whose number of words is known.
+	 * 
+	 * @return number of documents
+	 */
+	public synchronized int getNumberOfDocs() {
+		return numberOfDocs;
+	}
+
+	/**
+	 * Average number of words of the documents.
+	 * 
+	 * @return the average; 0 if there are no documents
+	 */
+	public synchronized double getAverageNumberOfWords() {
+		return numberOfDocs == 0 ? 0 : (double) totalNumberOfWords / numberOfDocs;
+	}
+
+	/**
+	 * Saves the statistics, if modified. The file is replaced in one step
+	 * (see P3Utils.replaceFile()).
+	 * 
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public synchronized void save() throws IOException {
+		if (modified) {
+			File tmpPath = new File(fPath.getPath() + ".tmp");
+			DataOutputStream file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpPath)));
+			try {
+				file.writeInt(MAGIC);
+				for (int i = 0; i < metadata.size(); i++)
+					if (metadata.get(i) != null) {
+						DocumentMetadata documentMetadata = metadata.get(i);
+						file.writeInt(i + 1);
+						file.writeInt(documentMetadata.getNumberOfWords());
+						file.writeInt(documentMetadata.getGeneration());
+						file.writeLong(documentMetadata.getSize());
+						file.writeLong(documentMetadata.getLastModified());
+						file.writeLong(documentMetadata.getHash());
+					}
+			} finally {
+				file.close();
+			}
+			P3Utils.replaceFile(tmpPath, fPath);
+			modified = false;
+		}
+	}
+
+	/**
+	 * Prepares system for closing by saving the statistics, if modified.
+	 */
+	public synchronized void close() {
+		try {
+			save();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
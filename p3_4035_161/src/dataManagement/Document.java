@@ -125,7 +125,7 @@ public class Document implements Iterable<WordInDocument> {
 	 *             while accessing the index directory.
 	 */
 	public WordInDocument readNextWordFromFile() throws IOException {
-		String w = "";
+		StringBuilder w = new StringBuilder();
 		long location = 0;
 		char ch;
 		try {
@@ -136,17 +136,17 @@ public class Document implements Iterable<WordInDocument> {
 			// of the next word in the file.
 			location = file.getFilePointer() - 1;
 			while (Character.isAlphabetic(ch)) {
-				w = w + ch;
+				w.append(ch);
 				ch = (char) (file.readByte());
 			}
 		} catch (IOException e) {
 			// just continue....
 		}
 
-		if (w.equals(""))
+		if (w.length() == 0)
 			return null;
 		else
-			return new WordInDocument(w.toLowerCase(), location);
+			return new WordInDocument(w.toString().toLowerCase(), location);
 	}
 
 	@Override
@@ -187,14 +187,16 @@ public class Document implements Iterable<WordInDocument> {
 	 *
 	 */
 	private class LineIterator implements Iterator<String> {
+		private DocumentTokenizer tokenizer; // reads lines from mapped file
 		private String nextLine;
 
 		/**
-		 * Default constructor for LineIterator objects. Resets file pointer.
+		 * Default constructor for LineIterator objects. Starts reading at the
+		 * beginning of the file.
 		 */
 		public LineIterator() {
 			try {
-				file.seek(0);
+				tokenizer = new DocumentTokenizer(file);
 				nextLine = readNextLineFromFile();
 			} catch (Exception e) {
 				nextLine = null;
@@ -230,19 +232,11 @@ public class Document implements Iterable<WordInDocument> {
 		 * @return String containing the next line of file
 		 */
 		private String readNextLineFromFile() {
-			String s = "";
-			char ch;
 			try {
-				ch = (char) (file.readByte());
-				while (ch != '\n') {
-					s += ch;
-					ch = (char) (file.readByte());
-				}
+				return tokenizer.nextLine();
 			} catch (IOException e) {
-				if (s.equals(""))
-					s = null;
+				return null;
 			}
-			return s;
 		}
 
 	}
@@ -254,16 +248,17 @@ public class Document implements Iterable<WordInDocument> {
 	 *
 	 */
 	private class WordIterator implements Iterator<WordInDocument> {
+		private DocumentTokenizer tokenizer; // reads words from mapped file
 		private WordInDocument nextWord;
 
 		/**
-		 * Default constructor for this type of object. Resets file pointer and
-		 * prepares next word.
+		 * Default constructor for this type of object. Starts reading at the
+		 * beginning of the file and prepares next word.
 		 */
 		public WordIterator() {
 			try {
-				file.seek(0);
-				nextWord = readNextWordFromFile();
+				tokenizer = new DocumentTokenizer(file);
+				nextWord = tokenizer.nextWord();
 			} catch (Exception e) {
 				nextWord = null;
 			}
@@ -288,8 +283,7 @@ public class Document implements Iterable<WordInDocument> {
 			WordInDocument widTR = null;
 			try {
 				widTR = nextWord;
-				nextWord = readNextWordFromFile(); // prepare for the next
-													// next()
+				nextWord = tokenizer.nextWord(); // prepare for the next next()
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -1,13 +1,25 @@
 package dataManagement;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Hashtable;
 import java.util.Map;
 
+import generalClasses.IntList;
 import generalClasses.P3Utils;
+import generalClasses.VarInt;
 import systemClasses.SystemController;
 
 /**
@@ -15,11 +27,34 @@ import systemClasses.SystemController;
  * particular document in the index. An object of this type is created for any
  * document that matches a particular search.
  * 
+ * An idx file begins with a header: MAGIC, number of different words, total
+ * number of words in the document and location of the directory of words.
+ * Then come, for every word, its locations followed by its ordinals (the
+ * positions of its occurrences among all the words of the document: 0 for the
+ * first word, 1 for the second, etc.), and the words with their directory (see
+ * WordDirectory). So, when only the locations of the words of a search are
+ * needed, only those words are decoded. Locations and ordinals are increasing,
+ * so each one is written as the difference with the previous one, as VarInt;
+ * the count of the word in the directory gives the number of each.
+ * 
+ * Idx files written by previous versions of the system (each word followed by
+ * its locations and -1) are still read, completely; they have no ordinals,
+ * which are computed from the locations of all the words when needed.
+ * 
  * @author Joel Torres
  *
  */
 public class DocumentIDX {
-	private Map<String, ArrayList<Integer>> wordLocationsMap = new Hashtable<>();
+	private static final int MAGIC = 0x50334933; // "P3I3"
+	private static final int HEADERSIZE = 16;
+	private static final IntList NOLOCATIONS = new IntList(1);
+	private static final int OBJECTSIZE = 64; // approximate sizes in memory
+	private static final int ENTRYSIZE = 96;
+	private Map<String, IntList> wordLocationsMap = new Hashtable<>();
+	private Map<String, IntList> wordOrdinalsMap = new Hashtable<>();
+	private boolean allWordsLoaded; // every word of the document in map
+	private boolean ordinalsInFile; // false if computed from the locations
+	private volatile long sizeInBytes; // approximate size in memory
 
 	// for the moment, only needed for testing purposes...
 	private int docID;
@@ -39,21 +74,381 @@ public class DocumentIDX {
 	 *             if docID does not match any existing idx file in the system
 	 */
 	public DocumentIDX(int docID) throws IOException, IllegalArgumentException {
+		this(docID, null);
+	}
+
+	/**
+	 * Initializes this instance with the locations of the given words only, as
+	 * registered in the idx file that corresponds to the identified document.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @param words
+	 *            the words whose locations are needed; null for all the words
+	 * @throws IOException
+	 *             if file format does not match expected format
+	 * @throws IllegalArgumentException
+	 *             if docID does not match any existing idx file in the system
+	 */
+	public DocumentIDX(int docID, Collection<String> words) throws IOException, IllegalArgumentException {
 		this.docID = docID;
+		allWordsLoaded = false;
+		ordinalsInFile = false;
+		sizeInBytes = OBJECTSIZE;
+		loadWords(words);
+	}
+
+	/**
+	 * Loads the locations (and ordinals, if in file) of the given words that
+	 * are not loaded yet from the idx file of the document.
+	 * 
+	 * @param words
+	 *            the words whose locations are needed; null for all the words
+	 * @throws IOException
+	 *             if file format does not match expected format
+	 * @throws IllegalArgumentException
+	 *             if docID does not match any existing idx file in the system
+	 */
+	public synchronized void loadWords(Collection<String> words) throws IOException, IllegalArgumentException {
+		if (allWordsLoaded)
+			return;
+		ArrayList<String> missingWords = null;
+		if (words != null) {
+			missingWords = new ArrayList<>();
+			for (String word : words)
+				if (!wordLocationsMap.containsKey(word))
+					missingWords.add(word);
+			if (missingWords.isEmpty())
+				return;
+		}
+
 		String fName = SystemController.makeIDXName(docID);
 		File idxFilePath = new File(P3Utils.IndexDirectoryPath, fName);
 		if (idxFilePath.exists()) {
 			RandomAccessFile idxFile = new RandomAccessFile(idxFilePath, "r");
-			loadMapContentFromIDXFile(idxFile);
-			idxFile.close();
+			try {
+				int magic = idxFile.length() >= HEADERSIZE ? idxFile.readInt() : 0;
+				if (magic == MAGIC) {
+					ordinalsInFile = true;
+					loadWordsFromIDXFile(idxFile, missingWords);
+				} else {
+					idxFile.seek(0);
+					loadMapContentFromIDXFile(idxFile);
+				}
+			} finally {
+				idxFile.close();
+			}
 		} else
 			throw new IllegalArgumentException("No document exist for id = " + docID);
 
 	}
 
+	/**
+	 * Loads the locations and ordinals of the given words that are not loaded
+	 * yet. If the idx file of the document has no ordinals, all its words are
+	 * loaded and the ordinals of all of them are computed from their
+	 * locations.
+	 * 
+	 * @param words
+	 *            the words whose ordinals are needed
+	 * @throws IOException
+	 *             if file format does not match expected format
+	 * @throws IllegalArgumentException
+	 *             if docID does not match any existing idx file in the system
+	 */
+	public synchronized void loadOrdinals(Collection<String> words) throws IOException, IllegalArgumentException {
+		loadWords(words);
+		if (!ordinalsInFile && wordOrdinalsMap.isEmpty()) {
+			loadWords(null);
+			computeOrdinals();
+		}
+	}
+
+	/**
+	 * Computes the ordinals of all the words from their locations: the ordinal
+	 * of an occurrence is the number of occurrences of words with lower
+	 * locations.
+	 */
+	private void computeOrdinals() {
+		int[] allLocations = allLocations(wordLocationsMap);
+		for (Map.Entry<String, IntList> e : wordLocationsMap.entrySet()) {
+			IntList ordinals = ordinalsOf(e.getValue(), allLocations);
+			wordOrdinalsMap.put(e.getKey(), ordinals);
+			sizeInBytes += 4 * ordinals.size();
+		}
+	}
+
+	/**
+	 * Gathers the locations of all the words of a document.
+	 * 
+	 * @param documentWordsMap
+	 *            map containing the words of the document and, for each word,
+	 *            the list of its locations in the document
+	 * @return the locations, in increasing order
+	 */
+	private static int[] allLocations(Map<String, IntList> documentWordsMap) {
+		IntList allLocations = new IntList();
+		for (IntList locations : documentWordsMap.values())
+			allLocations.addAll(locations);
+		allLocations.sort();
+		return allLocations.toArray();
+	}
+
+	/**
+	 * Computes the ordinals of the occurrences of a word.
+	 * 
+	 * @param locations
+	 *            locations of the word
+	 * @param allLocations
+	 *            locations of all the words, in increasing order
+	 * @return the ordinals, in the same order as the locations
+	 */
+	private static IntList ordinalsOf(IntList locations, int[] allLocations) {
+		IntList ordinals = new IntList(locations.size());
+		for (int i = 0; i < locations.size(); i++)
+			ordinals.add(Arrays.binarySearch(allLocations, locations.get(i)));
+		return ordinals;
+	}
+
+	/**
+	 * Reads the total number of words of a document from its idx file. Only
+	 * the header is read, except for idx files written by previous versions of
+	 * the system, which are read completely.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @return the number of words in the document
+	 * @throws IOException
+	 *             if file format does not match expected format
+	 * @throws IllegalArgumentException
+	 *             if docID does not match any existing idx file in the system
+	 */
+	public static int readNumberOfWords(int docID) throws IOException, IllegalArgumentException {
+		File idxFilePath = new File(P3Utils.IndexDirectoryPath, SystemController.makeIDXName(docID));
+		if (!idxFilePath.exists())
+			throw new IllegalArgumentException("No document exist for id = " + docID);
+		RandomAccessFile idxFile = new RandomAccessFile(idxFilePath, "r");
+		try {
+			int magic = idxFile.length() >= HEADERSIZE ? idxFile.readInt() : 0;
+			if (magic == MAGIC) {
+				idxFile.seek(8);
+				return idxFile.readInt();
+			}
+		} finally {
+			idxFile.close();
+		}
+		return new DocumentIDX(docID).numberOfRegisteredWords();
+	}
+
+	/**
+	 * Reads the different words of a document from its idx file. Only the
+	 * directory of the words is decoded, not their locations, except for idx
+	 * files written by previous versions of the system.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @return the words of the document
+	 * @throws IOException
+	 *             if file format does not match expected format
+	 * @throws IllegalArgumentException
+	 *             if docID does not match any existing idx file in the system
+	 */
+	public static ArrayList<String> readWords(int docID) throws IOException, IllegalArgumentException {
+		File idxFilePath = new File(P3Utils.IndexDirectoryPath, SystemController.makeIDXName(docID));
+		if (!idxFilePath.exists())
+			throw new IllegalArgumentException("No document exist for id = " + docID);
+		RandomAccessFile idxFile = new RandomAccessFile(idxFilePath, "r");
+		try {
+			int magic = idxFile.length() >= HEADERSIZE ? idxFile.readInt() : 0;
+			if (magic == MAGIC) {
+				MappedByteBuffer buffer = idxFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+						idxFile.length());
+				WordDirectory directory = new WordDirectory(buffer, buffer.getInt(4), buffer.getInt(12));
+				ArrayList<String> words = new ArrayList<>(directory.size());
+				for (int i = 0; i < directory.size(); i++)
+					words.add(directory.wordAt(i));
+				return words;
+			}
+		} finally {
+			idxFile.close();
+		}
+		return new ArrayList<>(new DocumentIDX(docID).wordLocationsMap.keySet());
+	}
+
+	/**
+	 * Writes the idx file of a document, with its words in increasing order.
+	 * The ordinals of the words are computed from their locations.
+	 * 
+	 * @param idxFilePath
+	 *            the idx file
+	 * @param documentWordsMap
+	 *            map containing the words of the document and, for each word,
+	 *            the list of its locations in the document
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public static void writeIDXFile(File idxFilePath, Map<String, IntList> documentWordsMap) throws IOException {
+		ArrayList<String> words = new ArrayList<>(documentWordsMap.keySet());
+		words.sort(null);
+		int totalWords = 0, entriesSize = 0;
+		for (String word : words) {
+			totalWords += documentWordsMap.get(word).size();
+			entriesSize += 12 + word.length();
+		}
+
+		int[] allLocations = allLocations(documentWordsMap);
+
+		// values are encoded first, since the location of the directory
+		// depends on their size
+		ByteArrayOutputStream values = new ByteArrayOutputStream(4 * totalWords);
+		DataOutputStream valuesFile = new DataOutputStream(values);
+		IntList counts = new IntList(words.size());
+		IntList locationsLocations = new IntList(words.size());
+		int location = HEADERSIZE;
+		for (String word : words) {
+			IntList locations = documentWordsMap.get(word);
+			counts.add(locations.size());
+			locationsLocations.add(location);
+			location += writeDeltas(locations, valuesFile);
+			location += writeDeltas(ordinalsOf(locations, allLocations), valuesFile);
+		}
+
+		// written in a temporary file first, so that an idx file is never
+		// found half written
+		File tmpPath = new File(idxFilePath.getPath() + ".tmp");
+		DataOutputStream idxFile = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpPath)));
+		try {
+			idxFile.writeInt(MAGIC);
+			idxFile.writeInt(words.size());
+			idxFile.writeInt(totalWords);
+			idxFile.writeInt(location + entriesSize);
+			values.writeTo(idxFile);
+			WordDirectory.write(idxFile, location, words, counts, locationsLocations);
+		} finally {
+			idxFile.close();
+		}
+		P3Utils.replaceFile(tmpPath, idxFilePath);
+	}
+
+	/**
+	 * Writes a list of increasing values as the differences between
+	 * consecutive values (the first one, as is).
+	 * 
+	 * @param list
+	 *            the values
+	 * @param file
+	 *            file to write to
+	 * @return number of bytes written
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	private static int writeDeltas(IntList list, DataOutput file) throws IOException {
+		int bytes = 0, previous = 0;
+		for (int i = 0; i < list.size(); i++) {
+			bytes += VarInt.write(list.get(i) - previous, file);
+			previous = list.get(i);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Loads the locations and ordinals of the given words from an idx file with
+	 * a directory of words. The file is mapped to memory and each word is found
+	 * by binary search in its directory.
+	 * 
+	 * @param idxFile
+	 *            index file to load info from
+	 * @param words
+	 *            the words to load; null for all the words
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	private void loadWordsFromIDXFile(RandomAccessFile idxFile, Collection<String> words) throws IOException {
+		MappedByteBuffer buffer = idxFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, idxFile.length());
+		docNumberOfWords = buffer.getInt(8);
+		WordDirectory directory = new WordDirectory(buffer, buffer.getInt(4), buffer.getInt(12));
+		if (words == null) {
+			for (int i = 0; i < directory.size(); i++)
+				putWordLocations(directory.wordAt(i), buffer, directory, i);
+			allWordsLoaded = true;
+		} else
+			for (String word : words) {
+				int i = directory.find(word);
+				if (i != -1)
+					putWordLocations(word, buffer, directory, i);
+				else
+					putWordLocations(word, NOLOCATIONS);
+			}
+	}
+
+	/**
+	 * Registers the locations of a word that has been loaded. Words not in the
+	 * document are registered too (with no locations), so that they are not
+	 * looked for again.
+	 * 
+	 * @param word
+	 *            the word
+	 * @param wordLocationsList
+	 *            its locations
+	 */
+	private void putWordLocations(String word, IntList wordLocationsList) {
+		IntList previous = wordLocationsMap.put(word, wordLocationsList);
+		if (previous == null)
+			sizeInBytes += ENTRYSIZE + 2 * word.length();
+		else
+			sizeInBytes -= 4 * previous.size();
+		sizeInBytes += 4 * wordLocationsList.size();
+	}
+
+	/**
+	 * Decodes and registers the locations and ordinals of the i-th word of an
+	 * idx file.
+	 * 
+	 * @param word
+	 *            the word
+	 * @param buffer
+	 *            content of the idx file
+	 * @param directory
+	 *            directory of the words in the file
+	 * @param i
+	 *            index of word
+	 */
+	private void putWordLocations(String word, MappedByteBuffer buffer, WordDirectory directory, int i) {
+		int count = directory.countAt(i);
+		ByteBuffer values = buffer.duplicate(); // own position
+		values.position(directory.valuesLocationAt(i));
+		putWordLocations(word, deltasAt(values, count));
+		if (wordOrdinalsMap.put(word, deltasAt(values, count)) == null)
+			sizeInBytes += 4 * count;
+	}
+
+	/**
+	 * Decodes values written by writeDeltas, from the current position of
+	 * buffer.
+	 * 
+	 * @param buffer
+	 *            content of the idx file
+	 * @param count
+	 *            number of values
+	 * @return list of values
+	 */
+	private static IntList deltasAt(ByteBuffer buffer, int count) {
+		IntList values = new IntList(count);
+		int value = 0;
+		for (int l = 0; l < count; l++) {
+			value += VarInt.read(buffer);
+			values.add(value);
+		}
+		return values;
+	}
+
 	/**
 	 * Loads content from given index file to map containing the word and
-	 * the locations of it in the file.
+	 * the locations of it in the file. Used for idx files written by previous
+	 * versions of the system.
 	 * 
 	 * @param idxFile
 	 *            index file to load info from
@@ -65,16 +460,17 @@ public class DocumentIDX {
 		long fileLength = idxFile.length();
 		boolean completed = false;
 		docNumberOfWords = 0;
+		allWordsLoaded = true;
 		while (!completed) {
 			try {
 				String word = P3Utils.readWord(idxFile);
-				ArrayList<Integer> wordLocationsList = new ArrayList<>();
+				IntList wordLocationsList = new IntList();
 				int docID = idxFile.readInt();
 				while (docID != -1) {
 					wordLocationsList.add(docID);
 					docID = idxFile.readInt();
 				}
-				wordLocationsMap.put(word, wordLocationsList);
+				putWordLocations(word, wordLocationsList);
 				docNumberOfWords += wordLocationsList.size();
 			} catch (IOException e) {
 				if (idxFile.getFilePointer() == fileLength)
@@ -85,6 +481,16 @@ public class DocumentIDX {
 		}
 	}
 
+	/**
+	 * Approximate number of bytes taken in memory by this object, with the
+	 * words loaded so far.
+	 * 
+	 * @return the size in bytes
+	 */
+	public long sizeInBytes() {
+		return sizeInBytes;
+	}
+
 	/**
 	 * Getter for number of word registered in system.
 	 * 
@@ -104,23 +510,33 @@ public class DocumentIDX {
 	}
 
 	/**
-	 * Returns an iterable collection of all the locations in the index file
-	 * of a given word.
+	 * Returns the list of all the locations in the index file of a given word.
+	 * The list returned is the one kept by this object, so it must not be
+	 * modified.
 	 * 
 	 * @param word
 	 *            word to return locations
-	 * @return locations of word in file
+	 * @return locations of word in file; an empty list if the word is not in
+	 *         the document or has not been loaded
 	 */
-	public Iterable<Integer> getWordLocations(String word) {
-		ArrayList<Integer> locationsList = new ArrayList<>();
-		ArrayList<Integer> tempList = wordLocationsMap.get(word);
-
-		if (tempList != null)
-			for (Integer location : tempList) 
-				locationsList.add(location);
-			
+	public IntList getWordLocations(String word) {
+		IntList locationsList = wordLocationsMap.get(word);
+		return locationsList != null ? locationsList : NOLOCATIONS;
+	}
 
-		return locationsList;
+	/**
+	 * Returns the list of the ordinals of a given word in the document, in
+	 * increasing order. The list returned is the one kept by this object, so
+	 * it must not be modified.
+	 * 
+	 * @param word
+	 *            word to return ordinals
+	 * @return ordinals of word; an empty list if the word is not in the
+	 *         document or its ordinals have not been loaded
+	 */
+	public IntList getWordOrdinals(String word) {
+		IntList ordinalsList = wordOrdinalsMap.get(word);
+		return ordinalsList != null ? ordinalsList : NOLOCATIONS;
 	}
 
 }
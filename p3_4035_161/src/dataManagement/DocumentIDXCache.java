@@ -0,0 +1,184 @@
+package dataManagement;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Cache of the DocumentIDX objects loaded by searches, shared by all of them.
+ * The cache is bounded by the approximate number of bytes taken by its
+ * objects; when the bound is exceeded, the least recently used objects are
+ * discarded. The object of a document must be invalidated whenever its idx
+ * file changes (the document is added or removed).
+ * 
+ * @author Joel Torres
+ *
+ */
+public class DocumentIDXCache {
+	private static final long MAXBYTES = 32L * 1024 * 1024; // bound of cache
+	private static DocumentIDXCache instance = null;
+	private LinkedHashMap<Integer, Entry> cache; // in access order
+	private long sizeInBytes; // sum of sizes of objects in cache
+
+	/**
+	 * An object in the cache, with the size it had when last counted in
+	 * sizeInBytes; the object may have grown since then, while loading words
+	 * without the lock of the cache.
+	 */
+	private static class Entry {
+		private DocumentIDX docIDX;
+		private long countedSize;
+
+		private Entry(DocumentIDX docIDX) {
+			this.docIDX = docIDX;
+			countedSize = docIDX.sizeInBytes();
+		}
+	}
+
+	/**
+	 * Returns the unique instance of the cache. If null, initializes it.
+	 * 
+	 * @return instance of DocumentIDXCache
+	 */
+	public static synchronized DocumentIDXCache getInstance() {
+		if (instance == null)
+			instance = new DocumentIDXCache();
+		return instance;
+	}
+
+	/**
+	 * Creates an empty cache.
+	 */
+	private DocumentIDXCache() {
+		cache = new LinkedHashMap<>(16, 0.75f, true);
+		sizeInBytes = 0;
+	}
+
+	/**
+	 * Returns the DocumentIDX object of a document, with the locations of the
+	 * given words loaded. The object is taken from the cache if there; the
+	 * words not loaded yet are read from the idx file.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @param words
+	 *            the words whose locations are needed
+	 * @return the DocumentIDX object
+	 * @throws IOException
+	 *             if file format does not match expected format
+	 * @throws IllegalArgumentException
+	 *             if docID does not match any existing idx file in the system
+	 */
+	public DocumentIDX getDocumentIDX(int docID, Collection<String> words)
+			throws IOException, IllegalArgumentException {
+		return getDocumentIDX(docID, words, false);
+	}
+
+	/**
+	 * Returns the DocumentIDX object of a document, with the locations and
+	 * ordinals of the given words loaded. The object is taken from the cache
+	 * if there; the words not loaded yet are read from the idx file.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @param words
+	 *            the words whose ordinals are needed
+	 * @return the DocumentIDX object
+	 * @throws IOException
+	 *             if file format does not match expected format
+	 * @throws IllegalArgumentException
+	 *             if docID does not match any existing idx file in the system
+	 */
+	public DocumentIDX getDocumentIDXWithOrdinals(int docID, Collection<String> words)
+			throws IOException, IllegalArgumentException {
+		return getDocumentIDX(docID, words, true);
+	}
+
+	/**
+	 * Returns the DocumentIDX object of a document, with the given words
+	 * loaded. The object is looked up, or put in the cache empty, with the lock
+	 * of the cache held; the words are read from the idx file without it, so
+	 * searches that need other documents do not wait for the disk. Searches
+	 * that need the same document wait for each other, since the object loads
+	 * its words with its own lock held. Then the size of the object is counted
+	 * again, if still in the cache.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @param words
+	 *            the words whose locations are needed
+	 * @param ordinals
+	 *            true if the ordinals of the words are needed too
+	 * @return the DocumentIDX object
+	 * @throws IOException
+	 *             if file format does not match expected format
+	 * @throws IllegalArgumentException
+	 *             if docID does not match any existing idx file in the system
+	 */
+	private DocumentIDX getDocumentIDX(int docID, Collection<String> words, boolean ordinals)
+			throws IOException, IllegalArgumentException {
+		Entry entry;
+		synchronized (this) {
+			entry = cache.get(docID);
+			if (entry == null) {
+				// no word loaded, so the file is not read yet
+				entry = new Entry(new DocumentIDX(docID, Collections.emptySet()));
+				cache.put(docID, entry);
+				sizeInBytes += entry.countedSize;
+			}
+		}
+
+		DocumentIDX docIDX = entry.docIDX;
+		try {
+			if (ordinals)
+				docIDX.loadOrdinals(words);
+			else
+				docIDX.loadWords(words);
+		} catch (IOException | IllegalArgumentException e) {
+			synchronized (this) {
+				if (cache.get(docID) == entry && docIDX.sizeInBytes() == entry.countedSize) {
+					cache.remove(docID); // nothing was loaded
+					sizeInBytes -= entry.countedSize;
+				}
+			}
+			throw e;
+		}
+
+		synchronized (this) {
+			if (cache.get(docID) == entry) { // not invalidated meanwhile
+				long size = docIDX.sizeInBytes();
+				sizeInBytes += size - entry.countedSize;
+				entry.countedSize = size;
+				evict();
+			}
+		}
+		return docIDX;
+	}
+
+	/**
+	 * Discards the least recently used objects until the cache is within its
+	 * bound. The most recently used object is always kept.
+	 */
+	private void evict() {
+		Iterator<Entry> iterator = cache.values().iterator();
+		while (sizeInBytes > MAXBYTES && cache.size() > 1) {
+			sizeInBytes -= iterator.next().countedSize;
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Discards the object of a document, if in the cache. To be called when
+	 * the idx file of the document is created or deleted.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 */
+	public synchronized void invalidate(int docID) {
+		Entry entry = cache.remove(docID);
+		if (entry != null)
+			sizeInBytes -= entry.countedSize;
+	}
+}
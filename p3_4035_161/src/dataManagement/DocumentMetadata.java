@@ -0,0 +1,202 @@
+package dataManagement;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+
+/**
+ * What the system knows about the file of an indexed document, as it was when
+ * the document was indexed: its size, the time of its last modification and
+ * a hash (CRC32) of its content, together with its number of words and the
+ * generation of the segment of the main index where its pairs went (see
+ * MainIndexManager). They are kept by DocsStatsManager, so that the files
+ * that changed since they were indexed are found without reading the idx
+ * files (see checkUpToDate()). Objects of this class are not modified.
+ * 
+ * Documents indexed by previous versions of the system only have their
+ * number of words; their size is UNKNOWN.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class DocumentMetadata {
+	public static final long UNKNOWN = -1;
+	private int numberOfWords;
+	private long size;
+	private long lastModified;
+	private long hash;
+	private int generation;
+
+	/**
+	 * Creates the metadata of a document.
+	 * 
+	 * @param numberOfWords
+	 *            total number of words in the document
+	 * @param size
+	 *            size of its file in bytes; UNKNOWN if unknown
+	 * @param lastModified
+	 *            time of last modification of its file
+	 * @param hash
+	 *            CRC32 of the content of its file
+	 * @param generation
+	 *            generation of the segment where its pairs go; 0 if unknown
+	 */
+	public DocumentMetadata(int numberOfWords, long size, long lastModified, long hash, int generation) {
+		this.numberOfWords = numberOfWords;
+		this.size = size;
+		this.lastModified = lastModified;
+		this.hash = hash;
+		this.generation = generation;
+	}
+
+	/**
+	 * Creates the metadata of a document whose file is about to be indexed,
+	 * reading the file to compute its hash. Must be called before the file is
+	 * tokenized: if the file changes meanwhile, the metadata is that of the
+	 * content before the change, so the document is found out of date later,
+	 * and not up to date with the content of the change missing from the
+	 * index.
+	 * 
+	 * @param docFilePath
+	 *            the file of the document
+	 * @return the metadata; its number of words and its generation are 0,
+	 *         until known (see withNumberOfWords() and withGeneration())
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while reading the file
+	 */
+	public static DocumentMetadata read(File docFilePath) throws IOException {
+		long size = docFilePath.length();
+		long lastModified = docFilePath.lastModified();
+		return new DocumentMetadata(0, size, lastModified, hashOf(docFilePath), 0);
+	}
+
+	/**
+	 * Computes the CRC32 of the content of a file.
+	 * 
+	 * @param fPath
+	 *            the file
+	 * @return the CRC32
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while reading the file
+	 */
+	public static long hashOf(File fPath) throws IOException {
+		CRC32 crc = new CRC32();
+		byte[] buffer = new byte[8192];
+		try (InputStream file = new FileInputStream(fPath)) {
+			for (int n = file.read(buffer); n != -1; n = file.read(buffer))
+				crc.update(buffer, 0, n);
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Copy of this metadata with the given number of words.
+	 * 
+	 * @param numberOfWords
+	 *            total number of words in the document
+	 * @return the copy
+	 */
+	public DocumentMetadata withNumberOfWords(int numberOfWords) {
+		return new DocumentMetadata(numberOfWords, size, lastModified, hash, generation);
+	}
+
+	/**
+	 * Copy of this metadata with the given generation.
+	 * 
+	 * @param generation
+	 *            generation of the segment where the pairs of the document go
+	 * @return the copy
+	 */
+	public DocumentMetadata withGeneration(int generation) {
+		return new DocumentMetadata(numberOfWords, size, lastModified, hash, generation);
+	}
+
+	/**
+	 * Determines if the file of the document is as it was when indexed. Its
+	 * size and time of last modification, as found in the docs directory, are
+	 * compared first; only if the size is the same and the time is not, the
+	 * file is read, to compare its hash. If the hash is the same, the file was
+	 * touched but not changed, and a copy of this metadata with the new time
+	 * is returned, to be registered instead of this one; so the file is not
+	 * read again the next time.
+	 * 
+	 * @param docFilePath
+	 *            the file of the document
+	 * @param currentSize
+	 *            its size now
+	 * @param currentLastModified
+	 *            its time of last modification now
+	 * @return this metadata, or a copy with the new time, if up to date; null
+	 *         otherwise
+	 * @throws IllegalStateException
+	 *             if the size of the file when indexed is unknown
+	 */
+	public DocumentMetadata checkUpToDate(File docFilePath, long currentSize, long currentLastModified)
+			throws IllegalStateException {
+		if (size == UNKNOWN)
+			throw new IllegalStateException("Unknown size of " + docFilePath.getName());
+		if (currentSize != size)
+			return null;
+		if (currentLastModified == lastModified)
+			return this;
+		try {
+			if (hashOf(docFilePath) != hash)
+				return null;
+		} catch (IOException e) {
+			return null;
+		}
+		return new DocumentMetadata(numberOfWords, size, currentLastModified, hash, generation);
+	}
+
+	/**
+	 * Getter for the number of words of the document.
+	 * 
+	 * @return the number of words
+	 */
+	public int getNumberOfWords() {
+		return numberOfWords;
+	}
+
+	/**
+	 * Getter for the size of the file of the document when indexed.
+	 * 
+	 * @return size in bytes; UNKNOWN if unknown
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Getter for the time of last modification of the file of the document
+	 * when indexed.
+	 * 
+	 * @return the time, in milliseconds since the epoch
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * Getter for the CRC32 of the content of the file of the document when
+	 * indexed.
+	 * 
+	 * @return the CRC32
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Getter for the generation of the segment where the pairs of the
+	 * document went.
+	 * 
+	 * @return the generation; 0 if unknown
+	 */
+	public int getGeneration() {
+		return generation;
+	}
+}
@@ -0,0 +1,169 @@
+package dataManagement;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Scans the content of a document's file and splits it in words or in lines.
+ * The file is read through a memory-mapped buffer instead of one readByte()
+ * call per character, and words are built in a reusable char array instead of
+ * by string concatenation. Files bigger than MAPPINGWINDOW bytes are mapped
+ * one window at a time.
+ *
+ * Words and locations produced are the same as the ones produced by
+ * Document.readNextWordFromFile(): a word is any maximal sequence of
+ * alphabetic characters, each byte being one character, and its location is
+ * the index in file of its first byte.
+ *
+ * @author Joel Torres
+ *
+ */
+public class DocumentTokenizer {
+	private static final long MAPPINGWINDOW = 1L << 26; // 64MB per mapping
+	private static final boolean[] ALPHABETIC = new boolean[256];
+
+	static {
+		// same test that is done on (char) file.readByte() when reading
+		// byte by byte...
+		for (int i = 0; i < 256; i++)
+			ALPHABETIC[i] = Character.isAlphabetic((char) (byte) i);
+	}
+
+	private FileChannel channel;
+	private long fileLength;
+	private long windowStart; // location in file of first byte in buffer
+	private MappedByteBuffer buffer;
+	private char[] chars = new char[64]; // characters of word or line being read
+
+	/**
+	 * Creates a new tokenizer positioned at the beginning of the given file.
+	 *
+	 * @param file
+	 *            the file with the document's content
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while mapping the file.
+	 */
+	public DocumentTokenizer(RandomAccessFile file) throws IOException {
+		channel = file.getChannel();
+		fileLength = channel.size();
+		mapWindow(0);
+	}
+
+	/**
+	 * Maps the window of the file that begins at the given location.
+	 *
+	 * @param location
+	 *            index in file of the first byte to map
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while mapping the file.
+	 */
+	private void mapWindow(long location) throws IOException {
+		windowStart = location;
+		long size = Math.min(MAPPINGWINDOW, fileLength - location);
+		buffer = channel.map(FileChannel.MapMode.READ_ONLY, location, size);
+	}
+
+	/**
+	 * Determines if there are bytes left to read, mapping the next window of
+	 * the file if the current one has been consumed.
+	 *
+	 * @return true if more bytes, false if the end of file has been reached
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while mapping the file.
+	 */
+	private boolean hasMoreBytes() throws IOException {
+		if (buffer.hasRemaining())
+			return true;
+		long nextLocation = windowStart + buffer.limit();
+		if (nextLocation >= fileLength)
+			return false;
+		mapWindow(nextLocation);
+		return true;
+	}
+
+	/**
+	 * Location in file of the next byte to read.
+	 *
+	 * @return the location
+	 */
+	public long getLocation() {
+		return windowStart + buffer.position();
+	}
+
+	/**
+	 * Adds a character to the ones of the word or line being read.
+	 *
+	 * @param length
+	 *            number of characters already read
+	 * @param ch
+	 *            the character to add
+	 */
+	private void append(int length, char ch) {
+		if (length == chars.length) {
+			char[] newChars = new char[2 * chars.length];
+			System.arraycopy(chars, 0, newChars, 0, length);
+			chars = newChars;
+		}
+		chars[length] = ch;
+	}
+
+	/**
+	 * Reads the next word at or after the current location.
+	 *
+	 * @return WordInDocument object containing the word (in lower case) and
+	 *         its location. null if no more words are found.
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while mapping the file.
+	 */
+	public WordInDocument nextWord() throws IOException {
+		byte b = 0;
+		boolean found = false;
+		while (!found && hasMoreBytes()) {
+			b = buffer.get();
+			found = ALPHABETIC[b & 0xFF];
+		}
+		if (!found)
+			return null;
+
+		long location = getLocation() - 1;
+		int length = 0;
+		do {
+			append(length++, (char) b);
+			if (!hasMoreBytes())
+				break;
+			b = buffer.get();
+		} while (ALPHABETIC[b & 0xFF]);
+
+		return new WordInDocument(new String(chars, 0, length).toLowerCase(), location);
+	}
+
+	/**
+	 * Reads the next line from the current location. The end of line
+	 * character is consumed but is not part of the line returned.
+	 *
+	 * @return the line; null if the end of file has been reached.
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while mapping the file.
+	 */
+	public String nextLine() throws IOException {
+		if (!hasMoreBytes())
+			return null;
+		int length = 0;
+		boolean endOfLine = false;
+		while (!endOfLine && hasMoreBytes()) {
+			char ch = (char) buffer.get();
+			if (ch == '\n')
+				endOfLine = true;
+			else
+				append(length++, ch);
+		}
+		return new String(chars, 0, length);
+	}
+}
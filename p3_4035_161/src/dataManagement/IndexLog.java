@@ -0,0 +1,448 @@
+package dataManagement;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.CRC32;
+
+import generalClasses.IntList;
+import generalClasses.P3Utils;
+
+/**
+ * Write-ahead log of the documents added to and removed from the index since
+ * the last checkpoint, kept in file index_log.pp3. A change is appended to the
+ * log and forced to disk before it is made in memory, so the files of the
+ * index are rewritten only at checkpoints (see SystemController), not after
+ * every change; if the system stops before, the changes are replayed from the
+ * log when it starts again.
+ * 
+ * The file begins with MAGIC, followed by the records. A record is its
+ * length, the CRC32 of its content and the content: the type of change, the
+ * generation of the segment where the pairs of the change go (see
+ * MainIndexManager), and then
+ * 
+ * - for an addition: docID, name of the document, number of words in the
+ * document, size, time of last modification and hash of its file (see
+ * DocumentMetadata), number of different words and, for each word, the word
+ * and its frequency
+ * 
+ * - for an update (a document whose file changed, indexed again with the same
+ * docID): the same as for an addition
+ * 
+ * - for a removal: number of documents and their docIDs.
+ * 
+ * Words are written as their length (an int) followed by one byte per
+ * character, and names of documents in UTF-8 (as by DataOutput.writeUTF()).
+ * 
+ * Since a record is appended with one write, only the last record can be
+ * incomplete after a crash; it is detected by its length or CRC, and
+ * discarded.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class IndexLog {
+	public static final String NAME = "index_log.pp3";
+	private static final int MAGIC = 0x5033574C; // "P3WL"
+	private static final byte ADDED = 'D';
+	private static final byte REMOVED = 'R';
+	private static final byte UPDATED = 'U';
+	private File fPath;
+	private RandomAccessFile file; // positioned at the end
+
+	/**
+	 * Receives the changes replayed from the log, in the order they were
+	 * made.
+	 */
+	public interface Handler {
+
+		/**
+		 * A document was added.
+		 * 
+		 * @param generation
+		 *            generation of the segment where its pairs go
+		 * @param docID
+		 *            id of the document
+		 * @param name
+		 *            name of the document
+		 * @param metadata
+		 *            metadata of the document, with the generation
+		 * @param frequencies
+		 *            map whose entries are (word, frequency in document)
+		 */
+		void added(int generation, int docID, String name, DocumentMetadata metadata,
+				Map<String, Integer> frequencies);
+
+		/**
+		 * A document was indexed again, with the same id; its previous pairs
+		 * are replaced by the given ones.
+		 * 
+		 * @param generation
+		 *            generation of the segment where its pairs go
+		 * @param docID
+		 *            id of the document
+		 * @param name
+		 *            name of the document
+		 * @param metadata
+		 *            new metadata of the document, with the generation
+		 * @param frequencies
+		 *            map whose entries are (word, frequency in document)
+		 */
+		void updated(int generation, int docID, String name, DocumentMetadata metadata,
+				Map<String, Integer> frequencies);
+
+		/**
+		 * Documents were removed.
+		 * 
+		 * @param generation
+		 *            generation of the segment where their removal goes
+		 * @param docIDs
+		 *            ids of the documents
+		 */
+		void removed(int generation, IntList docIDs);
+	}
+
+	/**
+	 * Writes the records of a change, once the generation of the segment
+	 * where the change goes is known (see MainIndexManager.registerPostings()).
+	 */
+	public interface Writer {
+
+		/**
+		 * Writes the records.
+		 * 
+		 * @param generation
+		 *            generation of the segment where the change goes
+		 * @throws IOException
+		 *             may throw this exception if an Input/Output error occurs
+		 *             while accessing the index directory.
+		 */
+		void write(int generation) throws IOException;
+	}
+
+	/**
+	 * Opens the log in the index directory, creating it if it does not exist.
+	 * 
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory, or if the file is not
+	 *             a log.
+	 */
+	public IndexLog() throws IOException {
+		P3Utils.IndexDirectoryPath.mkdirs();
+		fPath = new File(P3Utils.IndexDirectoryPath, NAME);
+		file = new RandomAccessFile(fPath, "rw");
+		if (file.length() < 4) {
+			file.setLength(0);
+			file.writeInt(MAGIC);
+			file.getFD().sync();
+		} else if (file.readInt() != MAGIC) {
+			file.close();
+			throw new IOException("Not a log file: " + fPath.getName());
+		}
+		file.seek(file.length());
+	}
+
+	/**
+	 * Replays the records of the log. An incomplete or damaged record, and
+	 * anything after it, is discarded from the file.
+	 * 
+	 * @param handler
+	 *            receives the changes
+	 * @return number of records replayed
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public int replay(Handler handler) throws IOException {
+		long location = 4;
+		int records = 0;
+		file.seek(location);
+		while (location + 8 <= file.length()) {
+			int length = file.readInt();
+			int checksum = file.readInt();
+			if (length < 0 || location + 8 + length > file.length())
+				break;
+			byte[] content = new byte[length];
+			file.readFully(content);
+			CRC32 crc = new CRC32();
+			crc.update(content);
+			if ((int) crc.getValue() != checksum)
+				break;
+			try {
+				replayRecord(new DataInputStream(new ByteArrayInputStream(content)), handler);
+			} catch (EOFException e) {
+				break; // damaged in a way the CRC did not detect
+			}
+			location += 8 + length;
+			records++;
+		}
+		if (location < file.length()) {
+			file.setLength(location);
+			file.getFD().sync();
+		}
+		file.seek(location);
+		return records;
+	}
+
+	/**
+	 * Decodes the content of a record and passes the change to the handler.
+	 * 
+	 * @param content
+	 *            content of the record
+	 * @param handler
+	 *            receives the change
+	 * @throws IOException
+	 *             if the content is shorter than expected
+	 */
+	private static void replayRecord(DataInputStream content, Handler handler) throws IOException {
+		byte type = content.readByte();
+		int generation = content.readInt();
+		if (type == ADDED || type == UPDATED) {
+			int docID = content.readInt();
+			String name = content.readUTF();
+			int numberOfWords = content.readInt();
+			long size = content.readLong();
+			long lastModified = content.readLong();
+			DocumentMetadata metadata = new DocumentMetadata(numberOfWords, size, lastModified, content.readLong(),
+					generation);
+			int numberOfDifferentWords = content.readInt();
+			Map<String, Integer> frequencies = new Hashtable<>();
+			for (int w = 0; w < numberOfDifferentWords; w++) {
+				String word = readString(content);
+				frequencies.put(word, content.readInt());
+			}
+			if (type == UPDATED)
+				handler.updated(generation, docID, name, metadata, frequencies);
+			else
+				handler.added(generation, docID, name, metadata, frequencies);
+		} else if (type == REMOVED) {
+			int numberOfDocs = content.readInt();
+			IntList docIDs = new IntList(numberOfDocs);
+			for (int d = 0; d < numberOfDocs; d++)
+				docIDs.add(content.readInt());
+			handler.removed(generation, docIDs);
+		}
+	}
+
+	/**
+	 * Appends the record of an added document. It is not on disk until sync()
+	 * is called.
+	 * 
+	 * @param generation
+	 *            generation of the segment where its pairs go
+	 * @param docID
+	 *            id of the document
+	 * @param name
+	 *            name of the document
+	 * @param metadata
+	 *            metadata of the document
+	 * @param frequencies
+	 *            map whose entries are (word, frequency in document)
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public synchronized void logAdded(int generation, int docID, String name, DocumentMetadata metadata,
+			Map<String, Integer> frequencies) throws IOException {
+		logDocument(ADDED, generation, docID, name, metadata, frequencies);
+	}
+
+	/**
+	 * Appends the record of a document indexed again (see logAdded()). It is
+	 * not on disk until sync() is called.
+	 * 
+	 * @param generation
+	 *            generation of the segment where its pairs go
+	 * @param docID
+	 *            id of the document
+	 * @param name
+	 *            name of the document
+	 * @param metadata
+	 *            new metadata of the document
+	 * @param frequencies
+	 *            map whose entries are (word, frequency in document)
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public synchronized void logUpdated(int generation, int docID, String name, DocumentMetadata metadata,
+			Map<String, Integer> frequencies) throws IOException {
+		logDocument(UPDATED, generation, docID, name, metadata, frequencies);
+	}
+
+	/**
+	 * Appends the record of an added or updated document.
+	 * 
+	 * @param type
+	 *            ADDED or UPDATED
+	 * @param generation
+	 *            generation of the segment where its pairs go
+	 * @param docID
+	 *            id of the document
+	 * @param name
+	 *            name of the document
+	 * @param metadata
+	 *            metadata of the document
+	 * @param frequencies
+	 *            map whose entries are (word, frequency in document)
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	private void logDocument(byte type, int generation, int docID, String name, DocumentMetadata metadata,
+			Map<String, Integer> frequencies) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream content = new DataOutputStream(bytes);
+		content.writeByte(type);
+		content.writeInt(generation);
+		content.writeInt(docID);
+		content.writeUTF(name);
+		content.writeInt(metadata.getNumberOfWords());
+		content.writeLong(metadata.getSize());
+		content.writeLong(metadata.getLastModified());
+		content.writeLong(metadata.getHash());
+		content.writeInt(frequencies.size());
+		for (Entry<String, Integer> e : frequencies.entrySet()) {
+			writeString(e.getKey(), content);
+			content.writeInt(e.getValue());
+		}
+		append(bytes.toByteArray());
+	}
+
+	/**
+	 * Appends the record of removed documents. It is not on disk until sync()
+	 * is called.
+	 * 
+	 * @param generation
+	 *            generation of the segment where their removal goes
+	 * @param docIDs
+	 *            ids of the documents
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public synchronized void logRemoved(int generation, Collection<Integer> docIDs) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream content = new DataOutputStream(bytes);
+		content.writeByte(REMOVED);
+		content.writeInt(generation);
+		content.writeInt(docIDs.size());
+		for (Integer docID : docIDs)
+			content.writeInt(docID);
+		append(bytes.toByteArray());
+	}
+
+	/**
+	 * Appends a record, with its length and CRC, in one write.
+	 * 
+	 * @param content
+	 *            content of the record
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	private void append(byte[] content) throws IOException {
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length + 8);
+		DataOutputStream record = new DataOutputStream(bytes);
+		record.writeInt(content.length);
+		record.writeInt((int) crc.getValue());
+		record.write(content);
+		file.write(bytes.toByteArray());
+	}
+
+	/**
+	 * Forces the records appended so far to disk.
+	 * 
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public synchronized void sync() throws IOException {
+		file.getFD().sync();
+	}
+
+	/**
+	 * Size of the log file.
+	 * 
+	 * @return size in bytes
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public synchronized long size() throws IOException {
+		return file.length();
+	}
+
+	/**
+	 * Discards all the records, once the changes they describe are saved in
+	 * the files of the index (a checkpoint).
+	 * 
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public synchronized void reset() throws IOException {
+		file.setLength(4);
+		file.getFD().sync();
+		file.seek(4);
+	}
+
+	/**
+	 * Closes the file of the log.
+	 */
+	public synchronized void close() {
+		try {
+			file.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Writes a string as its length followed by one byte per character. The
+	 * length is an int, since words have no bound on their length.
+	 * 
+	 * @param s
+	 *            the string
+	 * @param content
+	 *            stream to write to
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 */
+	private static void writeString(String s, DataOutputStream content) throws IOException {
+		content.writeInt(s.length());
+		for (int c = 0; c < s.length(); c++)
+			content.writeByte((byte) s.charAt(c));
+	}
+
+	/**
+	 * Reads a string written by writeString().
+	 * 
+	 * @param content
+	 *            stream to read from
+	 * @return the string
+	 * @throws IOException
+	 *             if the stream ends before the string
+	 */
+	private static String readString(DataInputStream content) throws IOException {
+		int length = content.readInt();
+		if (length < 0 || length > content.available())
+			throw new EOFException("String longer than record");
+		char[] chars = new char[length];
+		for (int c = 0; c < chars.length; c++)
+			chars[c] = (char) content.readByte();
+		return new String(chars);
+	}
+}
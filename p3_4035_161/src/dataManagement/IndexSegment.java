@@ -0,0 +1,676 @@
+package dataManagement;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+import generalClasses.IntList;
+import generalClasses.LevenshteinAutomaton;
+import generalClasses.P3Utils;
+import generalClasses.VarInt;
+
+/**
+ * Immutable part of the main index. Every time the main index commits its
+ * modifications, the pairs (docID, frequency) registered since the previous
+ * commit, together with the ids of the documents removed since then, are
+ * written as a new segment. Segments are never modified; the main index
+ * searches all of them together and, from time to time, merges several
+ * segments into a new one.
+ * 
+ * Segments are numbered by generation. A segment written by a commit covers
+ * one generation; a segment that results from a merge covers the range of
+ * generations of the segments merged. The ids of removed documents in a
+ * segment hide the pairs of those documents in segments of older generations,
+ * but not the pairs in the segment itself (which belong to documents added
+ * after the removal).
+ * 
+ * The file of a segment is segment_FFFFF_LLLLL.pp3, where FFFFF and LLLLL are
+ * the first and last generations covered, or segment_FFFFF_LLLLL_VVVVV.pp3 for
+ * a segment that results from a merge, where VVVVV is its version: one more
+ * than the highest version of the segments merged (0 for those with no
+ * version). So the file of a merged segment never has the name of one of the
+ * segments it replaces, even when a single segment is merged to compact it, and
+ * of two segments covering the same generations, the one of higher version is
+ * the newer one. The file is memory-mapped when the segment is opened and
+ * nothing else is read from it; the pairs of a word are decoded only when
+ * getDocsList() is called for that word. Its content is:
+ * 
+ * - header: MAGIC, first generation, last generation, number of words, number
+ * of pairs, number of removed ids, location of the block locations of the
+ * dictionary, number of pairs of older segments hidden by the removed ids
+ * 
+ * - the removed ids, in increasing order
+ * 
+ * - the pairs of every word, in increasing order of docID; each pair is the
+ * difference between its docID and the previous one followed by the
+ * frequency, both written as VarInt
+ * 
+ * - the dictionary of the words (see TermDictionary); the values of a word
+ * are its pairs, and their number is the count of the word.
+ * 
+ * The pairs hidden by the removed ids are dead: they take space and are
+ * filtered out by every search, until a merge that includes both the segment
+ * that holds them and the one that removes them discards them. Their number
+ * tells MainIndexManager when to compact the index (merge all the segments).
+ * 
+ * The main index file written by previous versions of the system is
+ * converted to a segment (see convertLegacyMainIndex()).
+ * 
+ * @author Joel Torres
+ *
+ */
+public class IndexSegment {
+	public static final String LEGACYNAME = "main_index.pp3";
+	private static final int MAGIC = 0x50335334; // "P3S4"
+	private static final int HEADERSIZE = 32;
+
+	private int firstGeneration;
+	private int lastGeneration;
+	private int version; // 0 if not the result of a merge
+	private int numberOfWords;
+	private int numberOfPairs;
+	private int numberOfRemoved;
+	private int numberOfHidden; // pairs of older segments hidden by removed
+	private MappedByteBuffer buffer; // content of file; only absolute gets
+	private TermDictionary dictionary;
+	private File fPath;
+
+	/**
+	 * Opens the segment in the given file by mapping it to memory.
+	 * 
+	 * @param fPath
+	 *            the file of the segment
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory, or if the content of
+	 *             the file is not a segment.
+	 */
+	private IndexSegment(File fPath) throws IOException {
+		this.fPath = fPath;
+		RandomAccessFile file = new RandomAccessFile(fPath, "r");
+		try {
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+		} finally {
+			file.close();
+		}
+		if (buffer.capacity() < HEADERSIZE || buffer.getInt(0) != MAGIC)
+			throw new IOException("Not a segment file: " + fPath.getName());
+		firstGeneration = buffer.getInt(4);
+		lastGeneration = buffer.getInt(8);
+		String[] parts = fPath.getName().replace(".pp3", "").split("_");
+		version = parts.length > 3 ? Integer.parseInt(parts[3]) : 0;
+		numberOfWords = buffer.getInt(12);
+		numberOfPairs = buffer.getInt(16);
+		numberOfRemoved = buffer.getInt(20);
+		numberOfHidden = buffer.getInt(28);
+		dictionary = new TermDictionary(buffer, numberOfWords, buffer.getInt(24));
+	}
+
+	/**
+	 * Makes the name of the file of the segment covering the given
+	 * generations.
+	 * 
+	 * @param firstGeneration
+	 *            first generation covered
+	 * @param lastGeneration
+	 *            last generation covered
+	 * @param version
+	 *            version of the segment; 0 if not the result of a merge
+	 * @return the name
+	 */
+	public static String makeSegmentName(int firstGeneration, int lastGeneration, int version) {
+		if (version == 0)
+			return String.format("segment_%05d_%05d.pp3", firstGeneration, lastGeneration);
+		return String.format("segment_%05d_%05d_%05d.pp3", firstGeneration, lastGeneration, version);
+	}
+
+	/**
+	 * Determines if the given name is the name of a segment file.
+	 * 
+	 * @param fName
+	 *            name of file
+	 * @return true if it is a segment file, false otherwise
+	 */
+	public static boolean isSegmentName(String fName) {
+		return fName.matches("segment_\\d+_\\d+(_\\d+)?\\.pp3");
+	}
+
+	/**
+	 * Writes a new segment and returns it.
+	 * 
+	 * @param firstGeneration
+	 *            first generation covered
+	 * @param lastGeneration
+	 *            last generation covered
+	 * @param map
+	 *            pairs (docID, frequency) of each word
+	 * @param removedDocIDs
+	 *            sorted ids of documents removed from older segments
+	 * @param numberOfHidden
+	 *            number of pairs of older segments hidden by removedDocIDs
+	 * @return the new segment
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public static IndexSegment write(int firstGeneration, int lastGeneration, Map<String, PostingList> map,
+			int[] removedDocIDs, int numberOfHidden) throws IOException {
+		ArrayList<String> words = new ArrayList<>(map.keySet());
+		words.sort(null);
+		SegmentWriter writer = new SegmentWriter(firstGeneration, lastGeneration, 0, removedDocIDs);
+		for (String word : words)
+			writer.addWord(word, map.get(word));
+		return writer.finish(numberOfHidden);
+	}
+
+	/**
+	 * Opens the segment in the given file.
+	 * 
+	 * @param fPath
+	 *            the file of the segment
+	 * @return the segment
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory, or if the content of
+	 *             the file is not a segment.
+	 */
+	public static IndexSegment read(File fPath) throws IOException {
+		return new IndexSegment(fPath);
+	}
+
+	/**
+	 * Converts the main index file written by previous versions of the system,
+	 * main_index.pp3, to the segment of generation 0, and deletes it. Pairs (0,
+	 * 0) left by removed documents are discarded, and so is anything after the
+	 * last complete list of pairs (that file was rewritten without being
+	 * truncated).
+	 * 
+	 * @param fPath
+	 *            the main index file
+	 * @return the segment
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public static IndexSegment convertLegacyMainIndex(File fPath) throws IOException {
+		Map<String, PostingList> map = new Hashtable<>();
+		DataInputStream file = new DataInputStream(new BufferedInputStream(new FileInputStream(fPath)));
+		long fileLength = fPath.length();
+		long location = 0;
+		try {
+			while (location < fileLength) {
+				String word = P3Utils.readWord(file);
+				PostingList wordDocsList = readPairs(file);
+				location += word.length() + 1 + 8 * (wordDocsList.size() + 1);
+				if (!wordDocsList.isEmpty())
+					map.put(word, wordDocsList);
+			}
+		} catch (EOFException e) {
+			// just continue....
+		} finally {
+			file.close();
+		}
+
+		IndexSegment segment = write(0, 0, map, new int[0], 0);
+		fPath.delete();
+		return segment;
+	}
+
+	/**
+	 * Reads pairs (docID, frequency) from the current location in file until
+	 * the pair (-1, -1) is found. Pairs (0, 0) are discarded.
+	 * 
+	 * @param file
+	 *            file to read from
+	 * @return the pairs read
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	private static PostingList readPairs(DataInputStream file) throws IOException {
+		PostingList wordDocsList = new PostingList();
+		int docID = file.readInt();
+		int wordFreq = file.readInt();
+		while (docID != -1) {
+			if (docID != 0)
+				wordDocsList.add(docID, wordFreq);
+			docID = file.readInt();
+			wordFreq = file.readInt();
+		}
+		return wordDocsList;
+	}
+
+	/**
+	 * Merges a run of consecutive segments into a new one that covers all
+	 * their generations. Pairs of documents removed by a newer segment in the
+	 * run are discarded. The removed ids of the run are kept in the new
+	 * segment, since they may still hide pairs in older segments, except when
+	 * the run includes the oldest segment of the index; then, no dead pair is
+	 * left, and merging all the segments compacts the index. Words left with
+	 * no pairs are discarded too. Since words are sorted
+	 * in every segment, they are merged one at a time, without loading whole
+	 * segments to memory.
+	 * 
+	 * @param run
+	 *            the segments to merge, from oldest to newest
+	 * @param includesOldest
+	 *            true if the first segment of run is the oldest one in the
+	 *            index
+	 * @return the new segment
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public static IndexSegment merge(IndexSegment[] run, boolean includesOldest) throws IOException {
+		IntList removed = new IntList();
+		if (!includesOldest)
+			for (IndexSegment segment : run)
+				for (int i = 0; i < segment.numberOfRemoved; i++)
+					removed.add(segment.removedDocIDAt(i));
+		removed.sort();
+
+		int version = 0;
+		for (IndexSegment segment : run)
+			version = Math.max(version, segment.version);
+		SegmentWriter writer = new SegmentWriter(run[0].firstGeneration, run[run.length - 1].lastGeneration,
+				version + 1, removed.toArray());
+		int discarded = 0; // dead pairs of the run
+		int numberOfHidden = 0; // dead pairs, in the run or older segments
+		for (IndexSegment segment : run)
+			numberOfHidden += segment.numberOfHidden;
+		TermDictionary.Cursor[] cursors = new TermDictionary.Cursor[run.length];
+		String[] heads = new String[run.length]; // current word of each one
+		for (int s = 0; s < run.length; s++) {
+			cursors[s] = run[s].dictionary.cursor();
+			heads[s] = cursors[s].next() ? cursors[s].word() : null;
+		}
+
+		while (true) {
+			String word = null;
+			for (String head : heads)
+				if (head != null && (word == null || head.compareTo(word) < 0))
+					word = head;
+			if (word == null)
+				break;
+
+			PostingList mergedList = new PostingList();
+			for (int s = 0; s < run.length; s++)
+				if (word.equals(heads[s])) {
+					PostingList list = run[s].docsListAt(cursors[s]);
+					for (int i = 0; i < list.size(); i++)
+						if (!isRemovedAfter(run, s, list.getDocID(i)))
+							mergedList.add(list.getDocID(i), list.getFrequency(i));
+						else
+							discarded++;
+					heads[s] = cursors[s].next() ? cursors[s].word() : null;
+				}
+			if (!mergedList.isEmpty())
+				writer.addWord(word, mergedList);
+		}
+
+		// no pair is hidden if the removed ids are not kept
+		return writer.finish(includesOldest ? 0 : Math.max(numberOfHidden - discarded, 0));
+	}
+
+	/**
+	 * Determines if a document has been removed by any of the segments after
+	 * position s in the given list.
+	 * 
+	 * @param segments
+	 *            list of segments from oldest to newest
+	 * @param s
+	 *            position of the segment that contains the pair
+	 * @param docID
+	 *            id of the document
+	 * @return true if removed, false otherwise
+	 */
+	static boolean isRemovedAfter(IndexSegment[] segments, int s, int docID) {
+		for (int i = s + 1; i < segments.length; i++)
+			if (segments[i].removes(docID))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Getter for the i-th removed id.
+	 * 
+	 * @param i
+	 *            index of removed id
+	 * @return the docID
+	 */
+	private int removedDocIDAt(int i) {
+		return buffer.getInt(HEADERSIZE + 4 * i);
+	}
+
+	/**
+	 * Determines if the given document is one of the documents removed from
+	 * older segments. Binary search over the removed ids in file.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @return true if removed, false otherwise
+	 */
+	public boolean removes(int docID) {
+		int low = 0, high = numberOfRemoved - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int removedID = removedDocIDAt(middle);
+			if (removedID < docID)
+				low = middle + 1;
+			else if (removedID > docID)
+				high = middle - 1;
+			else
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Decodes the pairs of the current word of a cursor of the dictionary.
+	 * 
+	 * @param cursor
+	 *            the cursor
+	 * @return the pairs
+	 */
+	private PostingList docsListAt(TermDictionary.Cursor cursor) {
+		return pairsAt(buffer, cursor.valuesLocation(), cursor.count());
+	}
+
+	/**
+	 * Decodes pairs written as VarInt: the difference between the docID and
+	 * the previous one, and the frequency.
+	 * 
+	 * @param buffer
+	 *            content of the file of a segment
+	 * @param location
+	 *            location of the first pair
+	 * @param count
+	 *            number of pairs
+	 * @return the pairs
+	 */
+	private static PostingList pairsAt(ByteBuffer buffer, int location, int count) {
+		PostingList list = new PostingList(count);
+		ByteBuffer pairs = buffer.duplicate(); // own position
+		pairs.position(location);
+		int docID = 0;
+		for (int p = 0; p < count; p++) {
+			docID += VarInt.read(pairs);
+			list.add(docID, VarInt.read(pairs));
+		}
+		return list;
+	}
+
+	/**
+	 * Gets the pairs (docID, frequency) of the given word in this segment.
+	 * The word is found in the dictionary and only its pairs are decoded.
+	 * 
+	 * @param word
+	 *            the word
+	 * @return list of pairs; null if the word is not in this segment
+	 */
+	public PostingList getDocsList(String word) {
+		TermDictionary.Cursor cursor = dictionary.cursor();
+		if (cursor.seek(word) && cursor.compareTo(word) == 0)
+			return docsListAt(cursor);
+		return null;
+	}
+
+	/**
+	 * Adds to a set the words of this segment that begin with the given
+	 * prefix and are accepted by a filter, in increasing order, until the set
+	 * has more than max words.
+	 * 
+	 * @param prefix
+	 *            the prefix; empty for all the words
+	 * @param filter
+	 *            decides which words are added
+	 * @param words
+	 *            the set of words
+	 * @param max
+	 *            maximum number of words wanted in the set
+	 */
+	public void collectWords(String prefix, Predicate<String> filter, TreeSet<String> words, int max) {
+		TermDictionary.Cursor cursor = dictionary.cursor();
+		if (!cursor.seek(prefix))
+			return;
+		do {
+			if (!cursor.startsWith(prefix))
+				return;
+			String word = cursor.word();
+			if (filter.test(word))
+				words.add(word);
+		} while (words.size() <= max && cursor.next());
+	}
+
+	/**
+	 * Adds to a map the words of this segment accepted by an automaton, with
+	 * their edit distances. The dictionary is walked in increasing order, and
+	 * whenever the automaton dies on a prefix, the words that begin with it
+	 * are skipped.
+	 * 
+	 * @param automaton
+	 *            automaton of the term looked for
+	 * @param words
+	 *            map whose entries are (word, edit distance)
+	 */
+	public void collectSimilarWords(LevenshteinAutomaton automaton, Map<String, Integer> words) {
+		TermDictionary.Cursor cursor = dictionary.cursor();
+		boolean more = cursor.next();
+		while (more) {
+			int distance = automaton.run(cursor);
+			if (distance != -1)
+				words.put(cursor.word(), distance);
+			int deadPrefixLength = automaton.deadPrefixLength();
+			if (deadPrefixLength == -1)
+				more = cursor.next();
+			else {
+				String target = LevenshteinAutomaton.skipTarget(cursor, deadPrefixLength);
+				more = target != null && cursor.seek(target);
+			}
+		}
+	}
+
+	/**
+	 * Determines if this segment covers all the generations of other, and
+	 * replaces it: it covers more generations, or the same ones with a higher
+	 * version.
+	 * 
+	 * @param other
+	 *            another segment
+	 * @return true if it covers them, false otherwise
+	 */
+	public boolean covers(IndexSegment other) {
+		if (firstGeneration == other.firstGeneration && lastGeneration == other.lastGeneration)
+			return version > other.version;
+		return firstGeneration <= other.firstGeneration && other.lastGeneration <= lastGeneration;
+	}
+
+	/**
+	 * Getter for the first generation covered.
+	 * 
+	 * @return the generation
+	 */
+	public int getFirstGeneration() {
+		return firstGeneration;
+	}
+
+	/**
+	 * Getter for the last generation covered.
+	 * 
+	 * @return the generation
+	 */
+	public int getLastGeneration() {
+		return lastGeneration;
+	}
+
+	/**
+	 * Number of pairs (docID, frequency) in this segment.
+	 * 
+	 * @return the number of pairs
+	 */
+	public int numberOfPairs() {
+		return numberOfPairs;
+	}
+
+	/**
+	 * Number of pairs of older segments hidden by the ids of removed documents
+	 * in this segment, as counted when they were removed.
+	 * 
+	 * @return the number of pairs
+	 */
+	public int numberOfHiddenPairs() {
+		return numberOfHidden;
+	}
+
+	/**
+	 * Determines if this segment removes documents from older segments.
+	 * 
+	 * @return true if it has removed ids, false otherwise
+	 */
+	public boolean hasRemoved() {
+		return numberOfRemoved > 0;
+	}
+
+	/**
+	 * Deletes the file of this segment. To be done once the segment has been
+	 * merged into another one.
+	 */
+	public void delete() {
+		fPath.delete();
+	}
+
+	/**
+	 * Writes the file of a new segment. Words must be added in increasing
+	 * order. Pairs are written as words are added; the dictionary of the
+	 * words is written at the end. The file is written with a
+	 * temporary name and renamed when complete, so a segment file is always
+	 * complete.
+	 * 
+	 * @author Joel Torres
+	 *
+	 */
+	private static class SegmentWriter {
+		private int firstGeneration, lastGeneration;
+		private File fPath, tmpPath;
+		private DataOutputStream file;
+		private int location; // location in file of next byte written
+		private ArrayList<String> words = new ArrayList<>();
+		private IntList counts = new IntList(); // number of pairs of each word
+		private IntList pairsLocations = new IntList(); // first pair of words
+		private int numberOfPairs = 0;
+		private int numberOfRemoved;
+
+		/**
+		 * Begins writing a new segment.
+		 * 
+		 * @param firstGeneration
+		 *            first generation covered
+		 * @param lastGeneration
+		 *            last generation covered
+		 * @param version
+		 *            version of the segment; 0 if not the result of a merge
+		 * @param removedDocIDs
+		 *            sorted ids of documents removed from older segments
+		 * @throws IOException
+		 *             may throw this exception if an Input/Output error occurs
+		 *             while accessing the index directory.
+		 */
+		private SegmentWriter(int firstGeneration, int lastGeneration, int version, int[] removedDocIDs)
+				throws IOException {
+			this.firstGeneration = firstGeneration;
+			this.lastGeneration = lastGeneration;
+			String fName = makeSegmentName(firstGeneration, lastGeneration, version);
+			fPath = new File(P3Utils.IndexDirectoryPath, fName);
+			tmpPath = new File(P3Utils.IndexDirectoryPath, fName + ".tmp");
+			P3Utils.IndexDirectoryPath.mkdirs();
+			file = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpPath)));
+			for (int i = 0; i < HEADERSIZE; i++)
+				file.writeByte(0); // header is written at the end...
+			for (int docID : removedDocIDs)
+				file.writeInt(docID);
+			numberOfRemoved = removedDocIDs.length;
+			location = HEADERSIZE + 4 * numberOfRemoved;
+		}
+
+		/**
+		 * Writes the pairs of the next word, in increasing order of docID.
+		 * 
+		 * @param word
+		 *            the word; goes after the previous one added
+		 * @param list
+		 *            its pairs; a sorted copy is written if they are not in
+		 *            order of docID, since the list may be read by searches
+		 * @throws IOException
+		 *             may throw this exception if an Input/Output error occurs
+		 *             while accessing the index directory.
+		 */
+		private void addWord(String word, PostingList list) throws IOException {
+			if (!list.isSortedByDocID()) {
+				PostingList sorted = new PostingList(list.size());
+				sorted.addAll(list);
+				sorted.sortByDocID();
+				list = sorted;
+			}
+			words.add(word);
+			counts.add(list.size());
+			pairsLocations.add(location);
+			int previousDocID = 0;
+			for (int i = 0; i < list.size(); i++) {
+				location += VarInt.write(list.getDocID(i) - previousDocID, file);
+				location += VarInt.write(list.getFrequency(i), file);
+				previousDocID = list.getDocID(i);
+			}
+			numberOfPairs += list.size();
+		}
+
+		/**
+		 * Writes the dictionary of the words and the header, and opens the new
+		 * segment.
+		 * 
+		 * @param numberOfHidden
+		 *            number of pairs of older segments hidden by the removed
+		 *            ids
+		 * @return the new segment
+		 * @throws IOException
+		 *             may throw this exception if an Input/Output error occurs
+		 *             while accessing the index directory.
+		 */
+		private IndexSegment finish(int numberOfHidden) throws IOException {
+			try {
+				int dictionaryLocation = TermDictionary.write(file, location, words, counts, pairsLocations);
+				file.close();
+
+				RandomAccessFile header = new RandomAccessFile(tmpPath, "rw");
+				header.writeInt(MAGIC);
+				header.writeInt(firstGeneration);
+				header.writeInt(lastGeneration);
+				header.writeInt(words.size());
+				header.writeInt(numberOfPairs);
+				header.writeInt(numberOfRemoved);
+				header.writeInt(dictionaryLocation);
+				header.writeInt(numberOfHidden);
+				header.close();
+			} finally {
+				file.close();
+			}
+			P3Utils.replaceFile(tmpPath, fPath);
+
+			return new IndexSegment(fPath);
+		}
+	}
+}
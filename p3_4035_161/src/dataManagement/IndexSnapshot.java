@@ -0,0 +1,276 @@
+package dataManagement;
+
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+import generalClasses.IntList;
+import generalClasses.LevenshteinAutomaton;
+
+/**
+ * State of the main index at some moment: its segments, the pairs registered
+ * since the last commit, the documents removed since then and the ids of the
+ * documents in the index (every id up to a bound, but those of documents not in
+ * the index, which are few since ids are reused). A snapshot is never modified
+ * once published by MainIndexManager; every change to the index publishes a new
+ * one. So any number of searches can read a snapshot at the same time, without
+ * locks, while documents are added or removed, and a search that reads the
+ * lists of several words from the same snapshot sees all of them as they were
+ * at the same moment.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class IndexSnapshot {
+	private long version; // increases with every snapshot published
+	private IndexSegment[] segments; // from oldest to newest
+	private TreeMap<String, PostingList> map; // pairs since last commit
+	private Set<Integer> removedDocIDs; // removed since last commit
+	private int lastRemoving; // last segment with removed ids; -1 if none
+	private int docIDBound; // greatest id of a document added
+	private Set<Integer> absentDocIDs; // ids up to bound not in the index
+
+	/**
+	 * Creates a snapshot. None of the given objects may be modified after
+	 * this.
+	 * 
+	 * @param version
+	 *            number of the snapshot; greater than that of any snapshot
+	 *            published before
+	 * @param segments
+	 *            the segments, from oldest to newest
+	 * @param map
+	 *            pairs (docID, frequency) of each word registered since the
+	 *            last commit
+	 * @param removedDocIDs
+	 *            ids of documents removed since the last commit
+	 * @param docIDBound
+	 *            greatest id of a document added to the index
+	 * @param absentDocIDs
+	 *            ids up to docIDBound of documents not in the index
+	 */
+	IndexSnapshot(long version, IndexSegment[] segments, TreeMap<String, PostingList> map,
+			Set<Integer> removedDocIDs, int docIDBound, Set<Integer> absentDocIDs) {
+		this.version = version;
+		this.segments = segments;
+		this.map = map;
+		this.removedDocIDs = removedDocIDs;
+		this.docIDBound = docIDBound;
+		this.absentDocIDs = absentDocIDs;
+		lastRemoving = -1;
+		for (int s = 0; s < segments.length; s++)
+			if (segments[s].hasRemoved())
+				lastRemoving = s;
+	}
+
+	/**
+	 * Getter for the number of the snapshot.
+	 * 
+	 * @return the version
+	 */
+	long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Getter for the segments; the array must not be modified.
+	 * 
+	 * @return the segments, from oldest to newest
+	 */
+	IndexSegment[] getSegments() {
+		return segments;
+	}
+
+	/**
+	 * Getter for the pairs registered since the last commit; the map and its
+	 * lists must not be modified.
+	 * 
+	 * @return map whose entries are (word, list of pairs)
+	 */
+	TreeMap<String, PostingList> getMap() {
+		return map;
+	}
+
+	/**
+	 * Getter for the ids of the documents removed since the last commit; the
+	 * set must not be modified.
+	 * 
+	 * @return the ids
+	 */
+	Set<Integer> getRemovedDocIDs() {
+		return removedDocIDs;
+	}
+
+	/**
+	 * Gets the ids of the documents in the index when the snapshot was
+	 * published, including those that have no words.
+	 * 
+	 * @return the ids, in increasing order
+	 */
+	public IntList getDocIDs() {
+		IntList docIDs = new IntList(docIDBound - absentDocIDs.size());
+		for (int docID = 1; docID <= docIDBound; docID++)
+			if (!absentDocIDs.contains(docID))
+				docIDs.add(docID);
+		return docIDs;
+	}
+
+	/**
+	 * Gets the list of pairs with docId and frequency of given word, in
+	 * increasing order of docID. When the word is found in one place only
+	 * (one segment, or the map) and none of its pairs can be hidden by the
+	 * ids of removed documents, as after a compaction, the list is returned
+	 * without being copied.
+	 * 
+	 * @param word
+	 *            word to return list of id and freq
+	 * @return list of id and freq, which must not be modified; null if word
+	 *         is not in the index
+	 */
+	public PostingList getDocsList(String word) {
+
+		// only add pairs of documents that have not been removed by a newer
+		// segment or since the last commit
+
+		PostingList filtered = null;
+		boolean copied = false; // filtered is a new list
+		for (int s = 0; s < segments.length; s++) {
+			PostingList wordDocsList = segments[s].getDocsList(word);
+			if (wordDocsList == null)
+				continue;
+			if (filtered == null && s >= lastRemoving && removedDocIDs.isEmpty()) {
+				filtered = wordDocsList; // nothing can hide its pairs
+				continue;
+			}
+			if (!copied) {
+				PostingList copy = new PostingList(wordDocsList.size());
+				if (filtered != null)
+					copy.addAll(filtered);
+				filtered = copy;
+				copied = true;
+			}
+			for (int i = 0; i < wordDocsList.size(); i++) {
+				int docID = wordDocsList.getDocID(i);
+				if (!IndexSegment.isRemovedAfter(segments, s, docID) && !removedDocIDs.contains(docID))
+					filtered.add(docID, wordDocsList.getFrequency(i));
+			}
+		}
+
+		PostingList wordDocsList = map.get(word);
+		if (wordDocsList != null) {
+			if (filtered == null && wordDocsList.isSortedByDocID())
+				return wordDocsList;
+			if (!copied) {
+				PostingList copy = new PostingList(wordDocsList.size());
+				if (filtered != null)
+					copy.addAll(filtered);
+				filtered = copy;
+				copied = true;
+			}
+			filtered.addAll(wordDocsList);
+		}
+		if (copied)
+			filtered.sortByDocID(); // ids of removed documents may be reused
+		return filtered;
+	}
+
+	/**
+	 * Finds the words in the index that match a pattern, where each * stands
+	 * for any sequence of characters (possibly none). Only the words that
+	 * begin with the characters before the first * are decoded, in every
+	 * segment and in the map; so a pattern such as comput* decodes a small
+	 * part of the dictionaries, while one that begins with * decodes all of
+	 * them. The search stops as soon as more than max words are found.
+	 * 
+	 * @param pattern
+	 *            the pattern, in lower case
+	 * @param max
+	 *            maximum number of words wanted
+	 * @return the words found, in increasing order; if there are more than
+	 *         max, max + 1 of them or more
+	 */
+	public ArrayList<String> getMatchingWords(String pattern, int max) {
+		int star = pattern.indexOf('*');
+		String prefix = star == -1 ? pattern : pattern.substring(0, star);
+		Predicate<String> filter = word -> matchesPattern(pattern, word);
+		TreeSet<String> words = new TreeSet<>();
+		for (IndexSegment segment : segments)
+			segment.collectWords(prefix, filter, words, max);
+		for (String word : map.tailMap(prefix).keySet()) {
+			if (!word.startsWith(prefix) || words.size() > max)
+				break;
+			if (filter.test(word))
+				words.add(word);
+		}
+		return new ArrayList<>(words);
+	}
+
+	/**
+	 * Finds the words in the index at edit distance at most maxDistance from
+	 * a term (see LevenshteinAutomaton). The automaton of the term walks the
+	 * words of every segment and of the map in increasing order, skipping the
+	 * words that begin with a prefix on which it dies; so most of the words
+	 * are never compared with the term.
+	 * 
+	 * @param term
+	 *            the term, in lower case
+	 * @param maxDistance
+	 *            maximum edit distance
+	 * @return map whose entries are (word, edit distance), in increasing order
+	 *         of word
+	 */
+	public TreeMap<String, Integer> getSimilarWords(String term, int maxDistance) {
+		LevenshteinAutomaton automaton = new LevenshteinAutomaton(term, maxDistance);
+		TreeMap<String, Integer> words = new TreeMap<>();
+		for (IndexSegment segment : segments)
+			segment.collectSimilarWords(automaton, words);
+		String word = map.isEmpty() ? null : map.firstKey();
+		while (word != null) {
+			int distance = automaton.run(word);
+			if (distance != -1)
+				words.put(word, distance);
+			int deadPrefixLength = automaton.deadPrefixLength();
+			if (deadPrefixLength == -1)
+				word = map.higherKey(word);
+			else {
+				String target = LevenshteinAutomaton.skipTarget(word, deadPrefixLength);
+				word = target == null ? null : map.ceilingKey(target);
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Determines if a word matches a pattern where each * stands for any
+	 * sequence of characters. When a character does not match, the last * is
+	 * made to cover one more character of the word.
+	 * 
+	 * @param pattern
+	 *            the pattern
+	 * @param word
+	 *            the word
+	 * @return true if it matches, false otherwise
+	 */
+	private static boolean matchesPattern(String pattern, String word) {
+		int p = 0, w = 0;
+		int star = -1, starW = 0; // last * seen, and where its match ends
+		while (w < word.length()) {
+			if (p < pattern.length() && pattern.charAt(p) == '*') {
+				star = p++;
+				starW = w;
+			} else if (p < pattern.length() && pattern.charAt(p) == word.charAt(w)) {
+				p++;
+				w++;
+			} else if (star != -1) {
+				p = star + 1;
+				w = ++starW;
+			} else
+				return false;
+		}
+		while (p < pattern.length() && pattern.charAt(p) == '*')
+			p++;
+		return p == pattern.length();
+	}
+}
@@ -4,27 +4,85 @@ import generalClasses.P3Utils;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Hashtable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Represents MainIndexManager objects which have the core map of the system,
  * where all the words with their respective docID and frequencies are stored.
  * 
+ * The main index is kept as a list of immutable segments (see IndexSegment)
+ * plus a map in memory with the pairs registered since the last commit. A
+ * commit writes the content in memory as a new segment, so its cost is
+ * proportional to what changed, not to the size of the whole index. Searches
+ * are done over all the segments together, and recent segments are merged in
+ * the background (see findRun()). When many pairs in segments belong to
+ * removed documents, all the segments are merged, which compacts the index;
+ * this can also be done on demand (see compact()).
+ * 
+ * Words are kept in increasing order, both in the dictionaries of the
+ * segments (see TermDictionary) and in the map in memory, so that the words
+ * that match a pattern such as comput* are found without going over the
+ * whole vocabulary (see IndexSnapshot.getMatchingWords()).
+ * 
+ * Searches read the main index through snapshots (see IndexSnapshot): every
+ * change (adding or removing documents, a commit, the end of a merge) is done
+ * on copies of the map and of the list of segments, and then published as a
+ * new snapshot. Changes to the map are done one at a time, with changeLock
+ * held, also while they are written to the log or while a commit writes its
+ * segment; the lock of this object is held only to publish, and that of
+ * references only to count the searches that use each snapshot. So searches
+ * never wait for changes, nor for the disk.
+ * 
+ * A search acquires its snapshot and releases it when done. What a change
+ * makes obsolete (the files of merged segments, the idx file of a removed
+ * document) is not deleted while a snapshot published before the change is
+ * still acquired, since the search that holds it may read it (see
+ * runWhenUnused()).
+ * 
  * @author Joel Torres
  *
  */
 public class MainIndexManager {
+	private static final int MAXMEMORYPAIRS = 100000; // commit when reached
+	private static final int MERGEFACTOR = 4; // min number of segments merged
+	private static final double COMPACTRATIO = 0.25; // dead pairs that start
+														// a compaction
 	private static MainIndexManager instance = null;
-	private Map<String, ArrayList<Entry<Integer, Integer>>> map;
-	private File fPath;
-	private RandomAccessFile file;
-	private boolean modified; // to remember if modifications have been made...
-	// needed to writeback to file is needed....
+	private volatile IndexSnapshot snapshot; // published for searches
+	private final Object changeLock = new Object(); // changes of map, one at
+													// a time
+	private TreeMap<String, PostingList> map; // pairs since last commit
+	private Set<Integer> removedDocIDs; // removed since last commit
+	private int numberOfPairs; // number of pairs in map
+	private int numberOfHidden; // pairs in segments hidden by removedDocIDs
+	private int docIDBound; // greatest id of a document added
+	private Set<Integer> absentDocIDs; // ids up to bound not in the index
+	private ArrayList<IndexSegment> segments; // from oldest to newest
+	private int nextGeneration; // generation of the next segment committed
+	private ExecutorService merger; // runs merges in the background
+	private boolean merging;
+	private long nextVersion; // version of the next snapshot published
+	private final TreeMap<Long, Integer> references; // acquired snapshots:
+														// version, number of
+														// searches; also the
+														// lock of deferred
+	private TreeMap<Long, ArrayList<Runnable>> deferred; // actions, by version
+															// of the last
+															// snapshot they
+															// wait for
 
 	/**
 	 * Returns an instance of the MainIndexManager object. If null, initializes
@@ -35,223 +93,715 @@ public class MainIndexManager {
 	 *             may throw this exception if an Input/Output error occurs
 	 *             while accessing the index directory.
 	 */
-	public static MainIndexManager getInstance() throws IOException {
+	public static synchronized MainIndexManager getInstance() throws IOException {
 		if (instance == null)
 			instance = new MainIndexManager();
 		return instance;
 	}
 
 	/**
-	 * MainIndexManager default constructor. Resets the modified status boolean
-	 * variable and initializes the path to the main index file.
+	 * MainIndexManager default constructor. Reads the segments in the index
+	 * directory (and the main index file of previous versions of the system,
+	 * if any) and initializes an empty map for new pairs.
 	 * 
 	 * @throws IOException
 	 *             may throw this exception if an Input/Output error occurs
 	 *             while accessing the index directory.
 	 */
 	private MainIndexManager() throws IOException {
-		modified = false;
-		map = new Hashtable<>();
-		String fName = "main_index.pp3";
-		fPath = new File(P3Utils.IndexDirectoryPath, fName);
-		if (fPath.exists()) {
-			file = new RandomAccessFile(fPath, "r");
-			readMapContentFromFile();
-			file.close();
-		}
+		map = new TreeMap<>();
+		removedDocIDs = new HashSet<>();
+		numberOfPairs = 0;
+		numberOfHidden = 0;
+		docIDBound = 0;
+		absentDocIDs = new HashSet<>();
+		segments = new ArrayList<>();
+		nextVersion = 1;
+		references = new TreeMap<>();
+		deferred = new TreeMap<>();
+		readSegments();
+		publish();
+		nextGeneration = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).getLastGeneration() + 1;
+		merger = Executors.newSingleThreadExecutor(r -> {
+			Thread t = new Thread(r, "segment-merger");
+			t.setDaemon(true);
+			return t;
+		});
+		merging = false;
 	}
 
 	/**
-	 * Reads file info and puts new entries into map with word and list of docs
-	 * ids and frequencies.
+	 * Reads the segments in the index directory, ordered from oldest to
+	 * newest. Segments covered by another one are left overs of a merge that
+	 * did not finish deleting them; they are deleted now. So are temporary
+	 * files of segments that were not completely written.
 	 * 
 	 * @throws IOException
 	 *             may throw this exception if an Input/Output error occurs
 	 *             while accessing the index directory.
 	 */
-	private void readMapContentFromFile() throws IOException {
-		long fileLength = file.length();
-		boolean completed = false;
-		while (!completed) {
-			try {
-				String word = P3Utils.readWord(file);
-				ArrayList<Entry<Integer, Integer>> wordDocsList = new ArrayList<>();
-				int docID = file.readInt();
-				int wordFreq = file.readInt();
-				while (docID != -1) {
-					wordDocsList.add(new AbstractMap.SimpleEntry<Integer, Integer>(docID, wordFreq));
-					docID = file.readInt();
-					wordFreq = file.readInt();
+	private void readSegments() throws IOException {
+		File[] files = P3Utils.IndexDirectoryPath.listFiles();
+		if (files == null)
+			return;
+		for (File f : files) {
+			String fName = f.getName();
+			if (IndexSegment.isSegmentName(fName))
+				segments.add(IndexSegment.read(f));
+			else if (fName.equals(IndexSegment.LEGACYNAME))
+				segments.add(IndexSegment.convertLegacyMainIndex(f));
+			else if (fName.startsWith("segment_") && fName.endsWith(".tmp"))
+				f.delete();
+		}
+
+		ArrayList<IndexSegment> covered = new ArrayList<>();
+		for (IndexSegment s1 : segments)
+			for (IndexSegment s2 : segments)
+				if (s1 != s2 && s1.covers(s2))
+					covered.add(s2);
+		for (IndexSegment segment : covered) {
+			segments.remove(segment);
+			segment.delete();
+		}
+
+		segments.sort((s1, s2) -> Integer.compare(s1.getFirstGeneration(), s2.getFirstGeneration()));
+	}
+
+	/**
+	 * Sets the ids of the documents in the index, which the snapshots give to
+	 * searches (see IndexSnapshot.getDocIDs()). Must be called before the
+	 * system runs, once the documents are known; from then on, the ids are
+	 * kept up to date by the changes of the index.
+	 * 
+	 * @param bound
+	 *            greatest id of a document in the index
+	 * @param absent
+	 *            ids up to bound of documents not in the index; the set must
+	 *            not be modified after this
+	 */
+	public void setDocIDs(int bound, Set<Integer> absent) {
+		synchronized (changeLock) {
+			synchronized (this) {
+				docIDBound = bound;
+				absentDocIDs = absent;
+				publish();
+			}
+		}
+	}
+
+	/**
+	 * Adds the data of one or many new documents to the main index in one
+	 * pass. For each word w, the given list of pairs (doc id, frequency of w in
+	 * doc) is appended to the list of pairs of w. The lists of the map are
+	 * copied, not modified, since searches may be reading them; the documents
+	 * become visible to searches all at once, when the new map is published.
+	 * The ids of the documents are not registered; this is used to make again
+	 * the changes of the log, before the ids are set (see setDocIDs()).
+	 * 
+	 * @param postings
+	 *            map whose entries are (word, list of pairs (doc id,
+	 *            frequency)); its lists are kept by the index, so they must
+	 *            not be modified after this
+	 */
+	public void registerPostings(Map<String, PostingList> postings) {
+		registerPostings(Collections.emptySet(), postings);
+	}
+
+	/**
+	 * Adds the data of one or many new documents to the main index in one
+	 * pass (see registerPostings()), together with their ids, so that those
+	 * of documents without words are known too.
+	 * 
+	 * @param docIDs
+	 *            ids of the documents
+	 * @param postings
+	 *            map whose entries are (word, list of pairs (doc id,
+	 *            frequency)); its lists are kept by the index, so they must
+	 *            not be modified after this
+	 */
+	private void registerPostings(Collection<Integer> docIDs, Map<String, PostingList> postings) {
+		synchronized (changeLock) {
+			TreeMap<String, PostingList> newMap = new TreeMap<>(map);
+			appendPostings(newMap, postings);
+			int newDocIDBound = docIDBound;
+			Set<Integer> newAbsentDocIDs = absentDocIDs; // copied when needed
+			for (Integer docID : docIDs) {
+				if (newAbsentDocIDs.contains(docID)) {
+					if (newAbsentDocIDs == absentDocIDs)
+						newAbsentDocIDs = new HashSet<>(absentDocIDs);
+					newAbsentDocIDs.remove(docID);
 				}
-				map.put(word, wordDocsList);
-			} catch (IOException e) {
-				if (file.getFilePointer() == fileLength)
-					completed = true;
-				else
-					e.printStackTrace();
+				newDocIDBound = Math.max(newDocIDBound, docID);
+			}
+			if (newDocIDBound > docIDBound) { // ids skipped are absent
+				if (newAbsentDocIDs == absentDocIDs)
+					newAbsentDocIDs = new HashSet<>(absentDocIDs);
+				for (int docID = docIDBound + 1; docID < newDocIDBound; docID++)
+					if (!docIDs.contains(docID))
+						newAbsentDocIDs.add(docID);
 			}
+			synchronized (this) {
+				map = newMap;
+				docIDBound = newDocIDBound;
+				absentDocIDs = newAbsentDocIDs;
+				publish();
+			}
+
+			commitIfFull();
 		}
 	}
 
 	/**
-	 * Adds the data of a new document to the main index. For each word w, it
-	 * will add a pair: (doc id, frequency of w in doc).
+	 * Appends lists of pairs to the lists of a copy of the map, copying the
+	 * lists that change.
 	 * 
-	 * @param word
-	 *            word to add
-	 * @param docID
-	 *            docId to add
-	 * @param frequency
-	 *            frequency of word
+	 * @param newMap
+	 *            the copy of the map, not yet published
+	 * @param postings
+	 *            map whose entries are (word, list of pairs (doc id,
+	 *            frequency))
 	 */
-	public void registerWordInDocument(String word, int docID, int frequency) {
-		ArrayList<Entry<Integer, Integer>> wordDocsList;
-		// the key in each entry is the docID number
-		// the value in each entry is the frequency of that word in
-		// the document. There can be only one entry having a particular
-		// key value in this list. We can use a Map for this, but since
-		// we are not assuming to large number of documents, and because
-		// of the operations we do with these type of lists, no need
-		// for that at the moment. The only occasions when we need to
-		// get one such entry by the id, is when removing; and also
-		// perhaps when adding to guarantee that there are no repetitions.
-		// However, the requirement of no repetitions need to be guarantee
-		// by the remove operation and the operation that assigned a new
-		// id to a new document; it needs to guarantee no two different
-		// docs are assigned the same id.
-
-		wordDocsList = map.get(word);
-		Entry<Integer, Integer> newEntry = new AbstractMap.SimpleEntry<>(docID, frequency);
-
-		if (wordDocsList == null) {
-			wordDocsList = new ArrayList<Entry<Integer, Integer>>();
-			wordDocsList.add(newEntry);
-			map.put(word, wordDocsList);
-		} else
-			wordDocsList.add(newEntry);
-
-		modified = true;
+	private void appendPostings(TreeMap<String, PostingList> newMap, Map<String, PostingList> postings) {
+		for (Entry<String, PostingList> e : postings.entrySet()) {
+			PostingList wordDocsList = newMap.get(e.getKey());
+			if (wordDocsList == null)
+				newMap.put(e.getKey(), e.getValue());
+			else {
+				PostingList newList = new PostingList(wordDocsList.size() + e.getValue().size());
+				newList.addAll(wordDocsList);
+				newList.addAll(e.getValue());
+				newMap.put(e.getKey(), newList);
+			}
+			numberOfPairs += e.getValue().size();
+		}
 	}
 
 	/**
-	 * Gets an iterable collection of entries with docId and frequency of given
-	 * word.
+	 * Adds the data of new documents to the main index (see
+	 * registerPostings()), once the change is written by the given writer,
+	 * which is told the generation of the segment where the pairs go. So the
+	 * change is in the log (see IndexLog) before it is seen by searches or
+	 * committed.
 	 * 
-	 * @param word
-	 *            word to return iterable of id and freq
-	 * @return iterable of id and freq
+	 * @param docIDs
+	 *            ids of the documents
+	 * @param postings
+	 *            map whose entries are (word, list of pairs (doc id,
+	 *            frequency))
+	 * @param writer
+	 *            writes the change to the log
+	 * @throws IOException
+	 *             if the writer fails; then nothing is changed
+	 */
+	public void registerPostings(Collection<Integer> docIDs, Map<String, PostingList> postings,
+			IndexLog.Writer writer) throws IOException {
+		synchronized (changeLock) {
+			writer.write(nextGeneration);
+			registerPostings(docIDs, postings);
+		}
+	}
+
+	/**
+	 * Determines if the changes made for a generation are already in the
+	 * committed segments.
+	 * 
+	 * @param generation
+	 *            the generation given to the writer of the change
+	 * @return true if committed, false if the change was only in memory
+	 */
+	public synchronized boolean isCommitted(int generation) {
+		return generation < nextGeneration;
+	}
+
+	/**
+	 * Gets the snapshot of the main index published by the last change, and
+	 * keeps what it refers to, on disk, until it is released.
+	 * 
+	 * @return the snapshot
+	 */
+	public IndexSnapshot acquireSnapshot() {
+		synchronized (references) {
+			IndexSnapshot acquired = snapshot;
+			references.merge(acquired.getVersion(), 1, Integer::sum);
+			return acquired;
+		}
+	}
+
+	/**
+	 * Releases a snapshot acquired by acquireSnapshot(). The actions waiting
+	 * for it, if it was the oldest snapshot in use, are run now.
+	 * 
+	 * @param released
+	 *            the snapshot
+	 */
+	public void releaseSnapshot(IndexSnapshot released) {
+		ArrayList<Runnable> ready;
+		synchronized (references) {
+			long version = released.getVersion();
+			if (references.merge(version, -1, Integer::sum) == 0)
+				references.remove(version);
+			ready = takeReadyActions();
+		}
+		for (Runnable action : ready)
+			action.run();
+	}
+
+	/**
+	 * Runs an action once every snapshot acquired before the call has been
+	 * released: right now if none is in use, or else when the last one is
+	 * released. Used to delete what changes already published made obsolete.
+	 * An equal snapshot is published, so that searches that begin later do
+	 * not delay the action.
+	 * 
+	 * @param action
+	 *            the action; it should not take long
 	 */
-	public Iterable<Entry<Integer, Integer>> getDocsList(String word) {
-
-		// only add entries to wordDocsList without key 0 (there are no
-		// documents with docID =
-		// 0 except for deleted ones)
-
-		ArrayList<Entry<Integer, Integer>> wordDocsList = map.get(word);
-		ArrayList<Entry<Integer, Integer>> filtered = new ArrayList<>();
-		if (wordDocsList == null)
-			return null;
-		for (int i = 0; i < wordDocsList.size(); i++) {
-			Entry<Integer, Integer> e = wordDocsList.get(i);
-			if (e.getKey() != 0) {
-				filtered.add(e);
+	public void runWhenUnused(Runnable action) {
+		ArrayList<Runnable> ready;
+		synchronized (this) {
+			synchronized (references) {
+				ArrayList<Runnable> actions = deferred.get(snapshot.getVersion());
+				if (actions == null) {
+					actions = new ArrayList<>();
+					deferred.put(snapshot.getVersion(), actions);
+				}
+				actions.add(action);
+				publish();
+				ready = takeReadyActions();
 			}
 		}
-		return filtered;
+		for (Runnable action1 : ready)
+			action1.run();
+	}
+
+	/**
+	 * Removes the deferred actions that no acquired snapshot is waiting for.
+	 * Must be called with the lock of references held; the actions are run
+	 * after it is released.
+	 * 
+	 * @return the actions, in the order they were deferred
+	 */
+	private ArrayList<Runnable> takeReadyActions() {
+		long oldest = references.isEmpty() ? Long.MAX_VALUE : references.firstKey();
+		Map<Long, ArrayList<Runnable>> head = deferred.headMap(oldest, false);
+		ArrayList<Runnable> ready = new ArrayList<>();
+		for (ArrayList<Runnable> actions : head.values())
+			ready.addAll(actions);
+		head.clear();
+		return ready;
 	}
 
 	/**
-	 * Remove the particular instance (if any) of the pair (d, f) for the
-	 * particular word; where d is the docID and f is the frequency of the word
-	 * in that particular document.
+	 * Gets the list of pairs with docId and frequency of given word, in
+	 * increasing order of docID, from the current snapshot.
 	 * 
 	 * @param word
-	 *            the word
-	 * @param docID
-	 *            the document id
-	 * @throws IllegalArgumentException
-	 *             if the given word is not in system (not found).
+	 *            word to return list of id and freq
+	 * @return list of id and freq; null if word is not in the index
 	 */
-	public void removeDocID(String word, int docID) throws IllegalArgumentException {
-		ArrayList<Entry<Integer, Integer>> wordDocsList;
-		wordDocsList = map.get(word);
-		if (wordDocsList == null)
-			throw new IllegalArgumentException("Word " + word + " is not present in system.");
-		Entry<Integer, Integer> searchEntry = new AbstractMap.SimpleEntry<>(docID, null);
-		int docPosIndex = P3Utils.findIndex(wordDocsList, searchEntry);
-		if (docPosIndex == -1)
-			throw new IllegalArgumentException("Word " + word + " is not register as part of document " + docID);
-
-		wordDocsList.remove(docPosIndex);
-		if (wordDocsList.isEmpty())
-			map.remove(word);
-
-		modified = true;
+	public PostingList getDocsList(String word) {
+		return snapshot.getDocsList(word);
 	}
 
 	/**
-	 * When the system is about to shutdown, this method needs to be executed to
-	 * save any modifications made to the main index content while in memory.
+	 * Publishes the current segments, map, removed ids and ids of the
+	 * documents as a new snapshot. Must be called, with the lock of this
+	 * object held, after any change; the map and the sets of ids published
+	 * are not modified anymore, they are replaced by modified copies.
 	 */
-	public void close() {
-		// iterate over entries in map and write each one to file
-		if (modified) {
-			try {
-				file = new RandomAccessFile(fPath, "rw");
-				file.seek(0);
+	private void publish() {
+		snapshot = new IndexSnapshot(nextVersion++, segments.toArray(new IndexSegment[segments.size()]), map, removedDocIDs,
+				docIDBound, absentDocIDs);
+	}
 
-				for (Entry<String, ArrayList<Entry<Integer, Integer>>> e : map.entrySet()) {
-					P3Utils.writeWordToFile(e.getKey(), file);
-					writeToDocsListToFile(e.getValue());
-				}
+	/**
+	 * Writes the pairs registered and the documents removed since the last
+	 * commit as a new segment. Then, schedules a merge of segments if needed.
+	 * 
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public void commit() throws IOException {
+		synchronized (changeLock) {
+			if (writeSegment())
+				scheduleMerge();
+		}
+	}
+
+	/**
+	 * Writes the pairs registered and the documents removed since the last
+	 * commit as a new segment, if any.
+	 * 
+	 * @return true if a segment was written, false if nothing changed
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	private boolean writeSegment() throws IOException {
+		synchronized (changeLock) {
+			if (map.isEmpty() && removedDocIDs.isEmpty())
+				return false;
+
+			int[] removed = new int[removedDocIDs.size()];
+			int i = 0;
+			for (Integer docID : removedDocIDs)
+				removed[i++] = docID;
+			Arrays.sort(removed);
 
-				file.close();
+			// searches and merges go on with the current snapshot while the
+			// segment is written; changes wait
+			IndexSegment segment = IndexSegment.write(nextGeneration, nextGeneration, map, removed, numberOfHidden);
+			numberOfPairs = 0;
+			numberOfHidden = 0;
+			synchronized (this) {
+				segments.add(segment);
+				nextGeneration++;
+				map = new TreeMap<>();
+				removedDocIDs = new HashSet<>();
+				publish();
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Commits if the number of pairs in memory has reached MAXMEMORYPAIRS.
+	 */
+	private void commitIfFull() {
+		if (numberOfPairs >= MAXMEMORYPAIRS)
+			try {
+				commit();
 			} catch (IOException e) {
-				e.printStackTrace();
+				e.printStackTrace(); // pairs remain in memory...
+			}
+	}
+
+	/**
+	 * Submits a merge to the merger thread, unless one is already waiting or
+	 * in progress. The run of segments merged is chosen by the merger thread
+	 * (see findRun()), so it is never out of date. Only one merge is done at a
+	 * time.
+	 */
+	private synchronized void scheduleMerge() {
+		if (merging || merger.isShutdown())
+			return;
+		merging = true;
+		merger.submit(this::mergeNextRun);
+	}
+
+	/**
+	 * Looks for a run of segments to merge. The run begins with the newest
+	 * segment and includes older segments while each one is not bigger than
+	 * all the newer ones in the run together; it is merged when it has at
+	 * least MERGEFACTOR segments. So segments grow geometrically, and each
+	 * pair is merged a logarithmic number of times. If there is no such run,
+	 * but the dead pairs (hidden by the ids of removed documents) are at least
+	 * COMPACTRATIO of all the pairs in segments, the run is all the segments,
+	 * so that the index is compacted. Must be called with the lock of this
+	 * object held.
+	 * 
+	 * @return the run, from oldest to newest; null if none
+	 */
+	private IndexSegment[] findRun() {
+		if (segments.size() >= MERGEFACTOR) {
+			int start = segments.size() - 1;
+			long total = segments.get(start).numberOfPairs();
+			while (start > 0 && segments.get(start - 1).numberOfPairs() <= total) {
+				start--;
+				total += segments.get(start).numberOfPairs();
 			}
+			if (segments.size() - start >= MERGEFACTOR)
+				return segments.subList(start, segments.size()).toArray(new IndexSegment[0]);
+		}
+
+		long pairs = 0, dead = 0;
+		for (IndexSegment segment : segments) {
+			pairs += segment.numberOfPairs();
+			dead += segment.numberOfHiddenPairs();
+		}
+		if (dead > 0 && dead >= COMPACTRATIO * pairs)
+			return segments.toArray(new IndexSegment[0]);
+		return null;
+	}
+
+	/**
+	 * Merges the run of segments found by findRun(), if any, and schedules
+	 * the next merge. Executed by the merger thread.
+	 */
+	private void mergeNextRun() {
+		IndexSegment[] run;
+		synchronized (this) {
+			merging = false;
+			run = findRun();
+		}
+		if (run == null)
+			return;
+		try {
+			mergeRun(run);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return; // not tried again until the next commit
 		}
+		scheduleMerge();
+	}
 
+	/**
+	 * Merges a run of segments and replaces them by the new segment. Executed
+	 * by the merger thread, and only there, so the segments of the run are
+	 * not removed by anyone else meanwhile. Neither searches nor changes are
+	 * blocked while the new segment is written. The files of the run are
+	 * deleted once the snapshots that refer to them are released.
+	 * 
+	 * @param run
+	 *            consecutive segments, from oldest to newest
+	 * @return the number of pairs discarded: dead pairs of the run
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	private int mergeRun(IndexSegment[] run) throws IOException {
+		boolean includesOldest;
+		synchronized (this) {
+			includesOldest = segments.indexOf(run[0]) == 0;
+		}
+		IndexSegment merged = IndexSegment.merge(run, includesOldest);
+		synchronized (this) {
+			int first = segments.indexOf(run[0]);
+			for (int i = 0; i < run.length; i++)
+				segments.remove(first);
+			segments.add(first, merged);
+			publish();
+		}
+		runWhenUnused(() -> {
+			for (IndexSegment segment : run)
+				segment.delete();
+		});
+		int discarded = -merged.numberOfPairs();
+		for (IndexSegment segment : run)
+			discarded += segment.numberOfPairs();
+		return discarded;
 	}
 
 	/**
-	 * Writes to main index file pairs of ids and frequencies.
+	 * Compacts the main index: commits, and then merges all the segments into
+	 * one, which discards every pair hidden by the ids of removed documents,
+	 * and every word left with no pairs. Waits for the merge in progress, if
+	 * any, since merges are done one at a time by the merger thread. Searches
+	 * and changes go on meanwhile; the pairs registered while compacting are
+	 * left for the next commit.
 	 * 
-	 * @param list
-	 *            list of entries
+	 * @return number of dead pairs discarded
 	 * @throws IOException
 	 *             may throw this exception if an Input/Output error occurs
 	 *             while accessing the index directory.
 	 */
-	private void writeToDocsListToFile(ArrayList<Entry<Integer, Integer>> list) throws IOException {
-		for (Entry<Integer, Integer> e : list) {
-			file.writeInt(e.getKey());
-			file.writeInt(e.getValue());
+	public int compact() throws IOException {
+		writeSegment(); // merged below, not by a merge scheduled now
+		Future<Integer> compaction = merger.submit(() -> {
+			IndexSegment[] run;
+			synchronized (this) {
+				run = segments.toArray(new IndexSegment[0]);
+			}
+			if (run.length == 0 || run.length == 1 && !run[0].hasRemoved())
+				return 0; // already compact
+			return mergeRun(run);
+		});
+		try {
+			return compaction.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Compaction interrupted", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	/**
+	 * When the system is about to shutdown, this method needs to be executed to
+	 * save any modifications made to the main index content while in memory.
+	 * It also waits for the merge in progress, if any.
+	 */
+	public void close() {
+		try {
+			commit();
+			merger.shutdown();
+			merger.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (IOException | InterruptedException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Removes the pairs of many documents from the main index in one pass.
+	 * Pairs registered since the last commit are discarded; only the lists of
+	 * the words of the documents are looked at, and each one is copied once,
+	 * without the pairs of any of them. Pairs in segments are hidden by the
+	 * next segment committed, which will include the docIDs among its removed
+	 * ones, so the segments are not read. As when adding, the map and the set
+	 * of removed ids are replaced by modified copies, and the documents
+	 * disappear from searches all at once.
+	 * 
+	 * @param documents
+	 *            map whose entries are (doc id, words of the document); if the
+	 *            words of a document are unknown (null), every list in the map
+	 *            is looked at
+	 */
+	public void removePairs(Map<Integer, ? extends Collection<String>> documents) {
+		synchronized (changeLock) {
+			Collection<String> words = new HashSet<>();
+			for (Collection<String> documentWords : documents.values())
+				if (documentWords == null) {
+					words = map.keySet();
+					break;
+				} else
+					words.addAll(documentWords);
+
+			TreeMap<String, PostingList> newMap = map; // copied when needed
+			HashSet<Integer> inMap = new HashSet<>(); // documents found in map
+			for (String word : words) {
+				PostingList wordDocsList = map.get(word);
+				if (wordDocsList == null)
+					continue;
+				PostingList kept = new PostingList(wordDocsList.size());
+				for (int i = 0; i < wordDocsList.size(); i++)
+					if (!documents.containsKey(wordDocsList.getDocID(i)))
+						kept.add(wordDocsList.getDocID(i), wordDocsList.getFrequency(i));
+					else
+						inMap.add(wordDocsList.getDocID(i));
+				if (kept.size() == wordDocsList.size())
+					continue;
+				if (newMap == map)
+					newMap = new TreeMap<>(map);
+				numberOfPairs -= wordDocsList.size() - kept.size();
+				if (kept.isEmpty())
+					newMap.remove(word);
+				else
+					newMap.put(word, kept);
+			}
+
+			// the pairs of a document are all in map or all in segments,
+			// where it has one pair per word
+			for (Entry<Integer, ? extends Collection<String>> e : documents.entrySet())
+				if (e.getValue() != null && !inMap.contains(e.getKey()))
+					numberOfHidden += e.getValue().size();
+
+			HashSet<Integer> newRemovedDocIDs = new HashSet<>(removedDocIDs);
+			newRemovedDocIDs.addAll(documents.keySet());
+			HashSet<Integer> newAbsentDocIDs = new HashSet<>(absentDocIDs);
+			for (Integer docID : documents.keySet())
+				if (docID <= docIDBound)
+					newAbsentDocIDs.add(docID);
+			synchronized (this) {
+				map = newMap;
+				removedDocIDs = newRemovedDocIDs;
+				absentDocIDs = newAbsentDocIDs;
+				publish();
+			}
 		}
-		file.writeInt(-1); // pair (-1, -1) marks the end of the list....
-		file.writeInt(-1);
+	}
 
+	/**
+	 * Removes the pairs of many documents from the main index (see
+	 * removePairs()), once the change is written by the given writer (see
+	 * registerPostings()).
+	 * 
+	 * @param documents
+	 *            map whose entries are (doc id, words of the document)
+	 * @param writer
+	 *            writes the change to the log
+	 * @throws IOException
+	 *             if the writer fails; then nothing is changed
+	 */
+	public void removePairs(Map<Integer, ? extends Collection<String>> documents, IndexLog.Writer writer)
+			throws IOException {
+		synchronized (changeLock) {
+			writer.write(nextGeneration);
+			removePairs(documents);
+		}
 	}
 
 	/**
-	 * Puts (0,0) to pairs in map when removing a document from system.
+	 * Replaces the pairs of a document indexed again with the same id, once
+	 * the change is written by the given writer (see registerPostings()).
+	 * Searches see either the previous pairs of the document or the new ones,
+	 * never both, since the change is published once. If the pairs of the
+	 * document are in the map (it was added since the last commit), only the
+	 * lists of the words whose frequency changed are copied; otherwise its
+	 * pairs in segments are hidden, as when removing it, and all the new ones
+	 * are added to the map.
 	 * 
 	 * @param docID
-	 *            id of doc to find and replace its id and frequency.
+	 *            id of the document
+	 * @param words
+	 *            the words of the document before the change
+	 * @param postings
+	 *            map whose entries are (word, list with the pair (doc id,
+	 *            frequency)) for the words of the document after the change
+	 * @param writer
+	 *            writes the change to the log
+	 * @throws IOException
+	 *             if the writer fails; then nothing is changed
 	 */
-	public void removePair(int docID) {
-		for (Entry<String, ArrayList<Entry<Integer, Integer>>> e1 : map.entrySet()) {
-			ArrayList<Entry<Integer, Integer>> docFreq = e1.getValue();
-			for (Entry<Integer, Integer> e2 : docFreq) {
-				// check if for current word, any of the documents match docID
-				// received
-				if (e2.getKey() == docID) {
-					// matches docID, put (0,0) in di,fi since its being removed
-					docFreq.set(docFreq.indexOf(e2), new AbstractMap.SimpleEntry<>(0, 0));
+	public void replacePairs(int docID, Collection<String> words, Map<String, PostingList> postings,
+			IndexLog.Writer writer) throws IOException {
+		synchronized (changeLock) {
+			writer.write(nextGeneration);
+			TreeMap<String, PostingList> newMap = new TreeMap<>(map);
+			Set<Integer> newRemovedDocIDs = removedDocIDs;
+			if (words.isEmpty() || frequencyOf(docID, map.get(words.iterator().next())) > 0) {
+				Set<String> allWords = new HashSet<>(words);
+				allWords.addAll(postings.keySet());
+				for (String word : allWords) {
+					PostingList wordDocsList = map.get(word);
+					int frequency = postings.containsKey(word) ? postings.get(word).getFrequency(0) : 0;
+					if (frequency == frequencyOf(docID, wordDocsList))
+						continue; // list not changed
+					PostingList newList = new PostingList(wordDocsList == null ? 1 : wordDocsList.size());
+					if (wordDocsList != null)
+						for (int i = 0; i < wordDocsList.size(); i++)
+							if (wordDocsList.getDocID(i) != docID)
+								newList.add(wordDocsList.getDocID(i), wordDocsList.getFrequency(i));
+					if (frequency > 0)
+						newList.add(docID, frequency);
+					numberOfPairs += newList.size() - (wordDocsList == null ? 0 : wordDocsList.size());
+					if (newList.isEmpty())
+						newMap.remove(word);
+					else
+						newMap.put(word, newList);
 				}
+			} else {
+				numberOfHidden += words.size();
+				newRemovedDocIDs = new HashSet<>(removedDocIDs);
+				newRemovedDocIDs.add(docID);
+				appendPostings(newMap, postings);
+			}
+			synchronized (this) {
+				map = newMap;
+				removedDocIDs = newRemovedDocIDs;
+				publish();
 			}
+
+			commitIfFull();
 		}
 	}
 
+	/**
+	 * Frequency of a document in a list of pairs of the map.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @param wordDocsList
+	 *            the list; null if none
+	 * @return the frequency; 0 if the document is not in the list
+	 */
+	private static int frequencyOf(int docID, PostingList wordDocsList) {
+		int index = wordDocsList == null ? -1 : wordDocsList.indexOfDocID(docID);
+		return index == -1 ? 0 : wordDocsList.getFrequency(index);
+	}
+
 	/**
 	 * Verifies status of file for info request part.
 	 * 
@@ -3,6 +3,8 @@ package dataManagement;
 import java.io.IOException;
 import java.util.ArrayList;
 
+import generalClasses.IntList;
+
 /**
  * An object of this type is created for each document that matches a particular
  * search; that is, a document that contains at least one of the words in the
@@ -12,18 +14,25 @@ import java.util.ArrayList;
  *
  */
 public class MatchingSearchDocument {
+	private int docID; // id of the document
 	private DocumentIDX docIDX; // contains data read from the idx file of the
-								// document
+								// document; only the matching words are read
 	private Document document; // the correponding document....
 
 	// the following is the list of words (from the search list)
 	// that are part of the document
 	private ArrayList<String> matchingWords; // words
+	private IntList matchingFrequencies; // frequencies of words in document
 	private ArrayList<Long> matchingLocations; // locations in document
+	private double rank; // rank of the document in the search
+	private int proximityClauses; // phrases and NEARs of search in document
+	private int proximityOccurrences; // and their number of occurrences
 
 	/**
 	 * Constructor for MatchingSearchDocument. Initializes it with its
 	 * corresponding Document and its lists of matching words and locations.
+	 * The idx file of the document is not read until all the matching words
+	 * are known (see buildMatchingLocations).
 	 * 
 	 * @param docID
 	 *            id of document
@@ -35,9 +44,10 @@ public class MatchingSearchDocument {
 	 *             while accessing the index directory.
 	 */
 	public MatchingSearchDocument(int docID) throws IllegalArgumentException, IOException {
-		docIDX = new DocumentIDX(docID); // instantiates object with data from
-											// IDX file
+		this.docID = docID;
+		docIDX = null;
 		matchingWords = new ArrayList<>();
+		matchingFrequencies = new IntList();
 		matchingLocations = null;
 		document = null;
 	}
@@ -50,20 +60,44 @@ public class MatchingSearchDocument {
 	 *            word to add
 	 */
 	public void addMatchingWord(String word) {
+		addMatchingWord(word, 0);
+	}
+
+	/**
+	 * Add a new word from the search list, which is identified as part of the
+	 * document, with its frequency in the document as registered in the main
+	 * index.
+	 * 
+	 * @param word
+	 *            word to add
+	 * @param frequency
+	 *            frequency of word in the document
+	 */
+	public void addMatchingWord(String word, int frequency) {
 		matchingWords.add(word);
+		matchingFrequencies.add(frequency);
 	}
 
 	/**
 	 * Constructs the list of all locations in the document where one of the
 	 * matching words begins. For each matching word, all its locations are
 	 * included as part of this list. That list is finally sorted in increasing
-	 * order.
+	 * order. The locations of the matching words are taken from the shared
+	 * cache of DocumentIDX objects, which reads them from the idx file of the
+	 * document if needed.
+	 * 
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
 	 */
-	public void buildMatchingLocations() {
+	public void buildMatchingLocations() throws IOException {
+		docIDX = DocumentIDXCache.getInstance().getDocumentIDX(docID, matchingWords);
 		matchingLocations = new ArrayList<>();
-		for (String word : matchingWords)
-			for (Integer location : docIDX.getWordLocations(word))
-				matchingLocations.add((long) location);
+		for (String word : matchingWords) {
+			IntList wordLocations = docIDX.getWordLocations(word);
+			for (int i = 0; i < wordLocations.size(); i++)
+				matchingLocations.add((long) wordLocations.get(i));
+		}
 
 		matchingLocations.sort(null);
 	}
@@ -73,8 +107,11 @@ public class MatchingSearchDocument {
 	 * the list of words to search
 	 * 
 	 * @return the list of locations
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
 	 */
-	public ArrayList<Long> getMathingWordsLocations() {
+	public ArrayList<Long> getMathingWordsLocations() throws IOException {
 		if (matchingWords == null)
 			buildMatchingLocations();
 		ArrayList<Long> result = new ArrayList<>();
@@ -93,6 +130,78 @@ public class MatchingSearchDocument {
 		return matchingWords;
 	}
 
+	/**
+	 * Getter for the frequencies of the matching words, in the same order as
+	 * the matchingWords list.
+	 * 
+	 * @return the frequencies
+	 */
+	public IntList getMatchingFrequencies() {
+		return matchingFrequencies;
+	}
+
+	/**
+	 * Registers the occurrences in the document of the proximity clauses
+	 * (phrases and NEAR operators) of the search.
+	 * 
+	 * @param clauses
+	 *            number of clauses that occur in the document
+	 * @param occurrences
+	 *            total number of occurrences of those clauses
+	 */
+	public void setProximityMatches(int clauses, int occurrences) {
+		proximityClauses = clauses;
+		proximityOccurrences = occurrences;
+	}
+
+	/**
+	 * Getter for the number of proximity clauses of the search that occur in
+	 * the document.
+	 * 
+	 * @return number of clauses
+	 */
+	public int getProximityClauses() {
+		return proximityClauses;
+	}
+
+	/**
+	 * Getter for the total number of occurrences in the document of the
+	 * proximity clauses of the search.
+	 * 
+	 * @return number of occurrences
+	 */
+	public int getProximityOccurrences() {
+		return proximityOccurrences;
+	}
+
+	/**
+	 * Getter for the id of the document.
+	 * 
+	 * @return the docID
+	 */
+	public int getDocID() {
+		return docID;
+	}
+
+	/**
+	 * Getter for the rank of the document in the search.
+	 * 
+	 * @return the rank
+	 */
+	public double getRank() {
+		return rank;
+	}
+
+	/**
+	 * Setter for the rank of the document in the search.
+	 * 
+	 * @param rank
+	 *            the rank
+	 */
+	public void setRank(double rank) {
+		this.rank = rank;
+	}
+
 	/**
 	 * Getter for corresponding Document instance of this MatchingSearchDocument
 	 * object.
@@ -105,7 +214,8 @@ public class MatchingSearchDocument {
 
 	/**
 	 * Getter for the corresponding DocIDX instance of this MatchingSearchDocument
-	 * object.
+	 * object. It contains the locations of the matching words only, and is null
+	 * until the matching locations are built.
 	 * 
 	 * @return the docIDX object
 	 */
@@ -125,7 +235,7 @@ public class MatchingSearchDocument {
 	 */
 	public void displayDocument(int nLines) throws IOException {
 		if (document == null)
-			document = new Document(docIDX.getDocID());
+			document = new Document(docID);
 		document.displayDocumentContent(matchingLocations, nLines);
 	}
 
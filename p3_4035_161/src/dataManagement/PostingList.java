@@ -0,0 +1,201 @@
+package dataManagement;
+
+import java.util.Arrays;
+
+/**
+ * List of pairs (docID, frequency) of a word in the main index. Each pair is
+ * packed in one long value (docID in the high 32 bits, frequency in the low 32
+ * bits), so that no object is created per pair.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class PostingList {
+	private static final int INITIALCAPACITY = 2;
+	private long[] pairs;
+	private int size;
+
+	/**
+	 * Creates an empty list.
+	 */
+	public PostingList() {
+		this(INITIALCAPACITY);
+	}
+
+	/**
+	 * Creates an empty list with room for the given number of pairs.
+	 * 
+	 * @param capacity
+	 *            initial capacity of the list
+	 */
+	public PostingList(int capacity) {
+		pairs = new long[Math.max(capacity, 1)];
+		size = 0;
+	}
+
+	/**
+	 * Packs a pair in a long value.
+	 * 
+	 * @param docID
+	 *            the document id
+	 * @param frequency
+	 *            the frequency
+	 * @return the packed pair
+	 */
+	private static long pack(int docID, int frequency) {
+		return ((long) docID << 32) | (frequency & 0xFFFFFFFFL);
+	}
+
+	/**
+	 * Adds pair (docID, frequency) at the end of the list.
+	 * 
+	 * @param docID
+	 *            the document id
+	 * @param frequency
+	 *            frequency of the word in the document
+	 */
+	public void add(int docID, int frequency) {
+		if (size == pairs.length)
+			pairs = Arrays.copyOf(pairs, 2 * pairs.length);
+		pairs[size++] = pack(docID, frequency);
+	}
+
+	/**
+	 * Adds all the pairs in other at the end of this list.
+	 * 
+	 * @param other
+	 *            list whose pairs are added
+	 */
+	public void addAll(PostingList other) {
+		if (size + other.size > pairs.length)
+			pairs = Arrays.copyOf(pairs, Math.max(size + other.size, 2 * pairs.length));
+		System.arraycopy(other.pairs, 0, pairs, size, other.size);
+		size += other.size;
+	}
+
+	/**
+	 * Getter for the document id of the pair at given index.
+	 * 
+	 * @param index
+	 *            index of pair
+	 * @return the docID
+	 * @throws IndexOutOfBoundsException
+	 *             if index is not in range [0, size())
+	 */
+	public int getDocID(int index) throws IndexOutOfBoundsException {
+		checkIndex(index);
+		return (int) (pairs[index] >>> 32);
+	}
+
+	/**
+	 * Getter for the frequency of the pair at given index.
+	 * 
+	 * @param index
+	 *            index of pair
+	 * @return the frequency
+	 * @throws IndexOutOfBoundsException
+	 *             if index is not in range [0, size())
+	 */
+	public int getFrequency(int index) throws IndexOutOfBoundsException {
+		checkIndex(index);
+		return (int) pairs[index];
+	}
+
+	/**
+	 * Replaces the pair at given index.
+	 * 
+	 * @param index
+	 *            index of pair
+	 * @param docID
+	 *            the new document id
+	 * @param frequency
+	 *            the new frequency
+	 * @throws IndexOutOfBoundsException
+	 *             if index is not in range [0, size())
+	 */
+	public void set(int index, int docID, int frequency) throws IndexOutOfBoundsException {
+		checkIndex(index);
+		pairs[index] = pack(docID, frequency);
+	}
+
+	/**
+	 * Removes the pair at given index, shifting the following ones.
+	 * 
+	 * @param index
+	 *            index of pair
+	 * @throws IndexOutOfBoundsException
+	 *             if index is not in range [0, size())
+	 */
+	public void remove(int index) throws IndexOutOfBoundsException {
+		checkIndex(index);
+		System.arraycopy(pairs, index + 1, pairs, index, size - index - 1);
+		size--;
+	}
+
+	/**
+	 * Finds the index of the pair of the given document.
+	 * 
+	 * @param docID
+	 *            the document id
+	 * @return index of the pair if found, -1 otherwise
+	 */
+	public int indexOfDocID(int docID) {
+		for (int i = 0; i < size; i++)
+			if ((int) (pairs[i] >>> 32) == docID)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * Sorts the pairs in increasing order of docID. Since docIDs are positive,
+	 * the packed pairs are sorted as long values; nothing is done if they are
+	 * already in order.
+	 */
+	public void sortByDocID() {
+		if (!isSortedByDocID())
+			Arrays.sort(pairs, 0, size);
+	}
+
+	/**
+	 * Determines if the pairs are in increasing order of docID.
+	 * 
+	 * @return true if they are, false otherwise
+	 */
+	public boolean isSortedByDocID() {
+		for (int i = 1; i < size; i++)
+			if (pairs[i - 1] > pairs[i])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Number of pairs in the list.
+	 * 
+	 * @return the size
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Determines if the list has no pairs.
+	 * 
+	 * @return true if empty, false otherwise
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Verifies that index is a valid index of a pair.
+	 * 
+	 * @param index
+	 *            index to verify
+	 * @throws IndexOutOfBoundsException
+	 *             if index is not in range [0, size())
+	 */
+	private void checkIndex(int index) throws IndexOutOfBoundsException {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+	}
+}
@@ -0,0 +1,149 @@
+package dataManagement;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the results of recent searches. The key of a search is the
+ * canonical text of its query (words in lower case, operands without
+ * repetitions and sorted) and the maximum number of documents in its result,
+ * and its result is the list of ranked documents, each with its rank and its
+ * matching words. The cache keeps a version number that is increased whenever
+ * the index changes; results computed over a previous version are discarded.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class QueryResultCache {
+	private static final int MAXQUERIES = 256; // bound of cache
+	private LinkedHashMap<String, ArrayList<RankedDocument>> cache; // in
+																	// access
+																	// order
+	private long version; // increased on every change of index
+
+	/**
+	 * Document in the result of a search.
+	 */
+	public static class RankedDocument {
+		private int docID;
+		private double rank;
+		private ArrayList<String> matchingWords;
+
+		/**
+		 * Creates a ranked document.
+		 * 
+		 * @param docID
+		 *            id of the document
+		 * @param rank
+		 *            rank of the document in the search
+		 * @param matchingWords
+		 *            words of the search in the document
+		 */
+		public RankedDocument(int docID, double rank, ArrayList<String> matchingWords) {
+			this.docID = docID;
+			this.rank = rank;
+			this.matchingWords = matchingWords;
+		}
+
+		/**
+		 * Getter for the id of the document.
+		 * 
+		 * @return the docID
+		 */
+		public int getDocID() {
+			return docID;
+		}
+
+		/**
+		 * Getter for the rank of the document.
+		 * 
+		 * @return the rank
+		 */
+		public double getRank() {
+			return rank;
+		}
+
+		/**
+		 * Getter for the words of the search in the document.
+		 * 
+		 * @return the matching words
+		 */
+		public ArrayList<String> getMatchingWords() {
+			return matchingWords;
+		}
+	}
+
+	/**
+	 * Creates an empty cache.
+	 */
+	public QueryResultCache() {
+		cache = new LinkedHashMap<String, ArrayList<RankedDocument>>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<String, ArrayList<RankedDocument>> eldest) {
+				return size() > MAXQUERIES;
+			}
+		};
+		version = 0;
+	}
+
+	/**
+	 * Builds the key of a search.
+	 * 
+	 * @param query
+	 *            canonical text of the query of the search
+	 * @param k
+	 *            maximum number of documents in the result; 0 for all of them
+	 * @return the key
+	 */
+	public static String makeKey(String query, int k) {
+		return k + ":" + query;
+	}
+
+	/**
+	 * Current version of the index.
+	 * 
+	 * @return the version
+	 */
+	public synchronized long getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the result of a search, if in cache.
+	 * 
+	 * @param key
+	 *            key of the search
+	 * @return the ranked documents, in increasing order of rank; null if not
+	 *         in cache
+	 */
+	public synchronized ArrayList<RankedDocument> get(String key) {
+		return cache.get(key);
+	}
+
+	/**
+	 * Saves the result of a search, unless the index changed while it was
+	 * computed.
+	 * 
+	 * @param key
+	 *            key of the search
+	 * @param result
+	 *            the ranked documents, in increasing order of rank
+	 * @param resultVersion
+	 *            version of the index when the search began
+	 */
+	public synchronized void put(String key, ArrayList<RankedDocument> result, long resultVersion) {
+		if (resultVersion == version)
+			cache.put(key, result);
+	}
+
+	/**
+	 * Discards all the results in cache. To be called whenever the index
+	 * changes.
+	 */
+	public synchronized void invalidate() {
+		version++;
+		cache.clear();
+	}
+}
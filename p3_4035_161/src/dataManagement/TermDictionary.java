@@ -0,0 +1,316 @@
+package dataManagement;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import generalClasses.IntList;
+import generalClasses.VarInt;
+
+/**
+ * Sorted dictionary of the words of a segment, kept in the file of the
+ * segment that is mapped to memory. Words are front coded: they are grouped in
+ * blocks of BLOCKSIZE consecutive words, and each word, except the first one
+ * of a block, is written as the number of characters it shares with the
+ * previous word followed by the rest of its characters. So words with common
+ * prefixes, which are neighbours in the dictionary, take little space.
+ * 
+ * The entry of a word is: number of shared characters, number of remaining
+ * characters, one byte per remaining character, number of values of the word
+ * (pairs) and location in file of its first value, all numbers as VarInt.
+ * After the entries comes the location of the first entry of each block, as
+ * ints, so that a word is found by binary search over the first words of the
+ * blocks and then by decoding the words of one block only.
+ * 
+ * Words are read with a Cursor, which visits them in increasing order from
+ * any word, as needed by exact lookups, by prefix and wildcard expansion and
+ * by the merge of segments.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class TermDictionary {
+	private static final int BLOCKSIZE = 16;
+	private ByteBuffer buffer; // content of file; only absolute gets
+	private int numberOfWords;
+	private int blocksLocation;
+
+	/**
+	 * Creates the dictionary whose block locations begin at the given location
+	 * of buffer.
+	 * 
+	 * @param buffer
+	 *            content of the file
+	 * @param numberOfWords
+	 *            number of words in the dictionary
+	 * @param blocksLocation
+	 *            location in buffer of the locations of the blocks
+	 */
+	public TermDictionary(ByteBuffer buffer, int numberOfWords, int blocksLocation) {
+		this.buffer = buffer;
+		this.numberOfWords = numberOfWords;
+		this.blocksLocation = blocksLocation;
+	}
+
+	/**
+	 * Writes the entries of the given words followed by the locations of the
+	 * blocks.
+	 * 
+	 * @param file
+	 *            file to write to
+	 * @param location
+	 *            location in file of the next byte written
+	 * @param words
+	 *            the words, in increasing order
+	 * @param counts
+	 *            number of values of each word
+	 * @param valuesLocations
+	 *            location in file of the first value of each word
+	 * @return the location in file of the locations of the blocks
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public static int write(DataOutput file, int location, ArrayList<String> words, IntList counts,
+			IntList valuesLocations) throws IOException {
+		IntList blockLocations = new IntList(words.size() / BLOCKSIZE + 1);
+		String previous = "";
+		for (int w = 0; w < words.size(); w++) {
+			String word = words.get(w);
+			int shared = 0;
+			if (w % BLOCKSIZE == 0)
+				blockLocations.add(location);
+			else
+				while (shared < previous.length() && shared < word.length()
+						&& previous.charAt(shared) == word.charAt(shared))
+					shared++;
+			location += VarInt.write(shared, file);
+			location += VarInt.write(word.length() - shared, file);
+			for (int c = shared; c < word.length(); c++)
+				file.writeByte((byte) word.charAt(c));
+			location += word.length() - shared;
+			location += VarInt.write(counts.get(w), file);
+			location += VarInt.write(valuesLocations.get(w), file);
+			previous = word;
+		}
+		for (int b = 0; b < blockLocations.size(); b++)
+			file.writeInt(blockLocations.get(b));
+		return location;
+	}
+
+	/**
+	 * Number of words in the dictionary.
+	 * 
+	 * @return the number of words
+	 */
+	public int size() {
+		return numberOfWords;
+	}
+
+	/**
+	 * Creates a cursor placed before the first word.
+	 * 
+	 * @return the cursor
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Visits the words of the dictionary in increasing order, decoding one
+	 * entry at a time. The current word is kept as bytes, so moving to the
+	 * next word creates no object; the cursor itself is the sequence of
+	 * characters of the current word.
+	 * 
+	 * @author Joel Torres
+	 *
+	 */
+	public class Cursor implements CharSequence {
+		private ByteBuffer entries; // own position: next entry
+		private int index; // index of current word
+		private byte[] word; // current word: first length bytes
+		private int length;
+		private int count;
+		private int valuesLocation;
+
+		/**
+		 * Creates a cursor placed before the first word.
+		 */
+		private Cursor() {
+			entries = buffer.duplicate();
+			word = new byte[32];
+			moveToBlock(0);
+		}
+
+		/**
+		 * Places the cursor before the first word of a block.
+		 * 
+		 * @param block
+		 *            index of block
+		 */
+		private void moveToBlock(int block) {
+			index = block * BLOCKSIZE - 1;
+			length = 0;
+			if (block * BLOCKSIZE < numberOfWords)
+				entries.position(buffer.getInt(blocksLocation + 4 * block));
+		}
+
+		/**
+		 * Moves to the next word.
+		 * 
+		 * @return true if there is a next word, false if the cursor was at the
+		 *         last one
+		 */
+		public boolean next() {
+			if (index + 1 >= numberOfWords)
+				return false;
+			index++;
+			int shared = VarInt.read(entries);
+			int rest = VarInt.read(entries);
+			length = shared + rest;
+			if (length > word.length)
+				word = Arrays.copyOf(word, Math.max(length, 2 * word.length));
+			entries.get(word, shared, rest);
+			count = VarInt.read(entries);
+			valuesLocation = VarInt.read(entries);
+			return true;
+		}
+
+		/**
+		 * Moves to the first word that is equal to or goes after the given
+		 * one. The block where it is is found by binary search; then, the
+		 * words of the block are decoded until it is reached.
+		 * 
+		 * @param target
+		 *            the word
+		 * @return true if found, false if every word goes before target
+		 */
+		public boolean seek(String target) {
+			int low = 0, high = (numberOfWords + BLOCKSIZE - 1) / BLOCKSIZE - 1;
+			int block = 0; // last block whose first word is not after target
+			while (low <= high) {
+				int middle = (low + high) >>> 1;
+				moveToBlock(middle);
+				next();
+				if (compareTo(target) <= 0) {
+					block = middle;
+					low = middle + 1;
+				} else
+					high = middle - 1;
+			}
+			moveToBlock(block);
+			while (next())
+				if (compareTo(target) >= 0)
+					return true;
+			return false;
+		}
+
+		/**
+		 * Compares the current word with the given one.
+		 * 
+		 * @param other
+		 *            word to compare with
+		 * @return negative, zero or positive if the current word goes before,
+		 *         is equal or goes after other
+		 */
+		public int compareTo(String other) {
+			int n = Math.min(length, other.length());
+			for (int c = 0; c < n; c++) {
+				int d = (char) word[c] - other.charAt(c);
+				if (d != 0)
+					return d;
+			}
+			return length - other.length();
+		}
+
+		/**
+		 * Determines if the current word begins with the given prefix.
+		 * 
+		 * @param prefix
+		 *            the prefix
+		 * @return true if it does, false otherwise
+		 */
+		public boolean startsWith(String prefix) {
+			if (prefix.length() > length)
+				return false;
+			for (int c = 0; c < prefix.length(); c++)
+				if ((char) word[c] != prefix.charAt(c))
+					return false;
+			return true;
+		}
+
+		/**
+		 * Number of characters of the current word.
+		 * 
+		 * @return the length
+		 */
+		public int length() {
+			return length;
+		}
+
+		/**
+		 * Character of the current word at given index.
+		 * 
+		 * @param index
+		 *            index of character
+		 * @return the character
+		 */
+		public char charAt(int index) {
+			return (char) word[index];
+		}
+
+		/**
+		 * Characters of the current word between the given indexes.
+		 * 
+		 * @param start
+		 *            index of the first character
+		 * @param end
+		 *            index after the last character
+		 * @return the characters
+		 */
+		public CharSequence subSequence(int start, int end) {
+			return word().substring(start, end);
+		}
+
+		/**
+		 * The current word.
+		 * 
+		 * @return the word
+		 */
+		public String toString() {
+			return word();
+		}
+
+		/**
+		 * Decodes the current word.
+		 * 
+		 * @return the word
+		 */
+		public String word() {
+			char[] chars = new char[length];
+			for (int c = 0; c < length; c++)
+				chars[c] = (char) word[c];
+			return new String(chars);
+		}
+
+		/**
+		 * Number of values of the current word.
+		 * 
+		 * @return number of values
+		 */
+		public int count() {
+			return count;
+		}
+
+		/**
+		 * Location in file of the first value of the current word.
+		 * 
+		 * @return the location
+		 */
+		public int valuesLocation() {
+			return valuesLocation;
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package dataManagement;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import generalClasses.IntList;
+
+/**
+ * Sorted list of words kept in an idx file that is mapped to memory. For each
+ * word, the file has one entry with: length of word, one byte per character
+ * of the word, number of values of the word (its locations) and location in
+ * file of its first value. After the entries comes the directory: the
+ * location of the entry of each word, in increasing order of words, so that a
+ * word is found by binary search without reading any other word.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class WordDirectory {
+	private ByteBuffer buffer; // content of file; only absolute gets
+	private int numberOfWords;
+	private int directoryLocation;
+
+	/**
+	 * Creates the directory of words that begins at the given location of
+	 * buffer.
+	 * 
+	 * @param buffer
+	 *            content of the file
+	 * @param numberOfWords
+	 *            number of words in the directory
+	 * @param directoryLocation
+	 *            location in buffer of the directory
+	 */
+	public WordDirectory(ByteBuffer buffer, int numberOfWords, int directoryLocation) {
+		this.buffer = buffer;
+		this.numberOfWords = numberOfWords;
+		this.directoryLocation = directoryLocation;
+	}
+
+	/**
+	 * Writes the entries of the given words followed by the directory.
+	 * 
+	 * @param file
+	 *            file to write to
+	 * @param location
+	 *            location in file of the next byte written
+	 * @param words
+	 *            the words, in increasing order
+	 * @param counts
+	 *            number of values of each word
+	 * @param valuesLocations
+	 *            location in file of the first value of each word
+	 * @return the location in file of the directory
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public static int write(DataOutput file, int location, ArrayList<String> words, IntList counts,
+			IntList valuesLocations) throws IOException {
+		IntList entryLocations = new IntList(words.size());
+		for (int w = 0; w < words.size(); w++) {
+			String word = words.get(w);
+			entryLocations.add(location);
+			file.writeInt(word.length());
+			for (int c = 0; c < word.length(); c++)
+				file.writeByte((byte) word.charAt(c));
+			file.writeInt(counts.get(w));
+			file.writeInt(valuesLocations.get(w));
+			location += 12 + word.length();
+		}
+		for (int w = 0; w < entryLocations.size(); w++)
+			file.writeInt(entryLocations.get(w));
+		return location;
+	}
+
+	/**
+	 * Number of words in the directory.
+	 * 
+	 * @return the number of words
+	 */
+	public int size() {
+		return numberOfWords;
+	}
+
+	/**
+	 * Location in file of the entry of the i-th word.
+	 * 
+	 * @param i
+	 *            index of word
+	 * @return the location
+	 */
+	private int entryLocation(int i) {
+		return buffer.getInt(directoryLocation + 4 * i);
+	}
+
+	/**
+	 * Decodes the i-th word.
+	 * 
+	 * @param i
+	 *            index of word
+	 * @return the word
+	 */
+	public String wordAt(int i) {
+		int entry = entryLocation(i);
+		int length = buffer.getInt(entry);
+		char[] chars = new char[length];
+		for (int c = 0; c < length; c++)
+			chars[c] = (char) buffer.get(entry + 4 + c);
+		return new String(chars);
+	}
+
+	/**
+	 * Compares the i-th word with the given one.
+	 * 
+	 * @param i
+	 *            index of word
+	 * @param word
+	 *            word to compare with
+	 * @return negative, zero or positive if the i-th word goes before, is equal
+	 *         or goes after word
+	 */
+	private int compareWordAt(int i, String word) {
+		int entry = entryLocation(i);
+		int length = buffer.getInt(entry);
+		int n = Math.min(length, word.length());
+		for (int c = 0; c < n; c++) {
+			int d = (char) buffer.get(entry + 4 + c) - word.charAt(c);
+			if (d != 0)
+				return d;
+		}
+		return length - word.length();
+	}
+
+	/**
+	 * Finds the given word by binary search.
+	 * 
+	 * @param word
+	 *            the word
+	 * @return index of the word; -1 if not found
+	 */
+	public int find(String word) {
+		int low = 0, high = numberOfWords - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int d = compareWordAt(middle, word);
+			if (d < 0)
+				low = middle + 1;
+			else if (d > 0)
+				high = middle - 1;
+			else
+				return middle;
+		}
+		return -1;
+	}
+
+	/**
+	 * Number of values of the i-th word.
+	 * 
+	 * @param i
+	 *            index of word
+	 * @return number of values
+	 */
+	public int countAt(int i) {
+		int entry = entryLocation(i);
+		return buffer.getInt(entry + 4 + buffer.getInt(entry));
+	}
+
+	/**
+	 * Location in file of the first value of the i-th word.
+	 * 
+	 * @param i
+	 *            index of word
+	 * @return the location
+	 */
+	public int valuesLocationAt(int i) {
+		int entry = entryLocation(i);
+		return buffer.getInt(entry + 8 + buffer.getInt(entry));
+	}
+}
@@ -13,15 +13,16 @@ import dataManagement.MatchingSearchDocument;
 public class EntryComparator implements Comparator<Entry<Double, MatchingSearchDocument>> {
 
 	/**
-	 * Method to compare the two keys of two entries.
+	 * Method to compare the two keys of two entries. Entries with equal keys
+	 * are compared by their docIDs, the highest docID going first.
 	 * @return -1 if o1 key goes before o2 key, 0 if equal, 1 otherwise
 	 */
 	public int compare(Entry<Double, MatchingSearchDocument> o1, Entry<Double, MatchingSearchDocument> o2) {
 		if (o1.getKey() < o2.getKey())
 			return -1;
-		else if (o2.getKey() > o2.getKey())
+		else if (o1.getKey() > o2.getKey())
 			return 1;
-		return 0;
+		return Integer.compare(o2.getValue().getDocID(), o1.getValue().getDocID());
 
 	}
 }
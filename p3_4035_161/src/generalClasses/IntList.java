@@ -0,0 +1,153 @@
+package generalClasses;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of int values kept in a primitive array. Used instead of
+ * ArrayList&lt;Integer&gt; for lists of locations, so that no object is
+ * created per value.
+ *
+ * @author Joel Torres
+ *
+ */
+public class IntList {
+	private static final int INITIALCAPACITY = 4;
+	private int[] elements;
+	private int size;
+
+	/**
+	 * Creates an empty list.
+	 */
+	public IntList() {
+		this(INITIALCAPACITY);
+	}
+
+	/**
+	 * Creates an empty list with room for the given number of values.
+	 *
+	 * @param capacity
+	 *            initial capacity of the list
+	 */
+	public IntList(int capacity) {
+		elements = new int[Math.max(capacity, 1)];
+		size = 0;
+	}
+
+	/**
+	 * Adds a value at the end of the list.
+	 *
+	 * @param value
+	 *            value to add
+	 */
+	public void add(int value) {
+		if (size == elements.length)
+			elements = Arrays.copyOf(elements, 2 * elements.length);
+		elements[size++] = value;
+	}
+
+	/**
+	 * Adds all the values in other at the end of this list.
+	 *
+	 * @param other
+	 *            list whose values are added
+	 */
+	public void addAll(IntList other) {
+		if (size + other.size > elements.length)
+			elements = Arrays.copyOf(elements, Math.max(size + other.size, 2 * elements.length));
+		System.arraycopy(other.elements, 0, elements, size, other.size);
+		size += other.size;
+	}
+
+	/**
+	 * Getter for the value at given index.
+	 *
+	 * @param index
+	 *            index of value
+	 * @return the value
+	 * @throws IndexOutOfBoundsException
+	 *             if index is not in range [0, size())
+	 */
+	public int get(int index) throws IndexOutOfBoundsException {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		return elements[index];
+	}
+
+	/**
+	 * Replaces the value at given index.
+	 *
+	 * @param index
+	 *            index of value
+	 * @param value
+	 *            new value
+	 * @throws IndexOutOfBoundsException
+	 *             if index is not in range [0, size())
+	 */
+	public void set(int index, int value) throws IndexOutOfBoundsException {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+		elements[index] = value;
+	}
+
+	/**
+	 * Number of values in the list.
+	 *
+	 * @return the size
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Determines if the list has no values.
+	 *
+	 * @return true if empty, false otherwise
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Sorts the values in increasing order.
+	 */
+	public void sort() {
+		Arrays.sort(elements, 0, size);
+	}
+
+	/**
+	 * Copies the values to a new array.
+	 *
+	 * @return array with the values of the list
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(elements, size);
+	}
+
+	/**
+	 * Determines if another list has the same values, in the same order.
+	 *
+	 * @param other
+	 *            the other list
+	 * @return true if equal, false otherwise
+	 */
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof IntList))
+			return false;
+		IntList list = (IntList) other;
+		if (list.size != size)
+			return false;
+		for (int i = 0; i < size; i++)
+			if (list.elements[i] != elements[i])
+				return false;
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for (int i = 0; i < size; i++)
+			hash = 31 * hash + elements[i];
+		return hash;
+	}
+}
@@ -0,0 +1,148 @@
+package generalClasses;
+
+import java.util.Arrays;
+
+/**
+ * Automaton that accepts the words at edit distance at most maxDistance from a
+ * term: the words that can be obtained from the term by inserting, deleting or
+ * replacing at most maxDistance characters. Its state after reading some
+ * characters is the row of the edit distances between them and every prefix of
+ * the term, with distances over maxDistance kept as maxDistance + 1; so there
+ * is a finite number of states, and each character read costs one pass over
+ * the term.
+ * 
+ * The automaton is meant to walk a sorted dictionary of words: the states of
+ * the characters that a word shares with the previous word run are reused, and
+ * once no word with a given prefix can be accepted (the automaton is dead),
+ * the walk can skip to the first word that does not begin with that prefix
+ * (see skipTarget()). So only a small part of the dictionary is visited.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class LevenshteinAutomaton {
+	private String term;
+	private int maxDistance;
+	private int[][] rows; // rows[i]: state after i characters of the word
+	private char[] chars; // characters of the last word run
+	private int computed; // rows[0..computed] are valid for chars
+	private int deadPrefixLength; // -1 if the last word run did not kill it
+
+	/**
+	 * Creates the automaton of a term.
+	 * 
+	 * @param term
+	 *            the term
+	 * @param maxDistance
+	 *            maximum edit distance of accepted words
+	 */
+	public LevenshteinAutomaton(String term, int maxDistance) {
+		this.term = term;
+		this.maxDistance = maxDistance;
+		rows = new int[term.length() + maxDistance + 1][];
+		rows[0] = new int[term.length() + 1];
+		for (int j = 0; j <= term.length(); j++)
+			rows[0][j] = Math.min(j, maxDistance + 1);
+		chars = new char[rows.length];
+		computed = 0;
+		deadPrefixLength = -1;
+	}
+
+	/**
+	 * Runs the automaton on a word.
+	 * 
+	 * @param word
+	 *            the word
+	 * @return the edit distance between word and the term, if it is at most
+	 *         maxDistance; -1 otherwise
+	 */
+	public int run(CharSequence word) {
+		int shared = 0;
+		while (shared < computed && shared < word.length() && chars[shared] == word.charAt(shared))
+			shared++;
+		computed = shared;
+		deadPrefixLength = -1;
+		for (int i = shared + 1; i <= word.length(); i++) {
+			step(i, word.charAt(i - 1));
+			if (isDead(rows[i])) {
+				deadPrefixLength = i;
+				return -1;
+			}
+		}
+		int distance = rows[word.length()][term.length()];
+		return distance <= maxDistance ? distance : -1;
+	}
+
+	/**
+	 * Computes the state after reading the i-th character of a word from the
+	 * state before it.
+	 * 
+	 * @param i
+	 *            number of characters read, including ch
+	 * @param ch
+	 *            the i-th character
+	 */
+	private void step(int i, char ch) {
+		if (i >= rows.length) {
+			rows = Arrays.copyOf(rows, 2 * rows.length);
+			chars = Arrays.copyOf(chars, rows.length);
+		}
+		if (rows[i] == null)
+			rows[i] = new int[term.length() + 1];
+		int[] previous = rows[i - 1], row = rows[i];
+		row[0] = Math.min(i, maxDistance + 1);
+		for (int j = 1; j <= term.length(); j++) {
+			int distance = previous[j - 1] + (term.charAt(j - 1) == ch ? 0 : 1);
+			distance = Math.min(distance, previous[j] + 1);
+			distance = Math.min(distance, row[j - 1] + 1);
+			row[j] = Math.min(distance, maxDistance + 1);
+		}
+		chars[i - 1] = ch;
+		computed = i;
+	}
+
+	/**
+	 * Determines if no word that begins with the characters read can be
+	 * accepted.
+	 * 
+	 * @param row
+	 *            state after reading them
+	 * @return true if every distance in row is over maxDistance
+	 */
+	private boolean isDead(int[] row) {
+		for (int distance : row)
+			if (distance <= maxDistance)
+				return false;
+		return true;
+	}
+
+	/**
+	 * Number of characters of the last word run after which the automaton was
+	 * dead: no word that begins with them is accepted.
+	 * 
+	 * @return the number of characters; -1 if the automaton did not die
+	 */
+	public int deadPrefixLength() {
+		return deadPrefixLength;
+	}
+
+	/**
+	 * Finds the first word, in increasing order, that goes after all the words
+	 * that begin with a prefix of the given word.
+	 * 
+	 * @param word
+	 *            the word
+	 * @param prefixLength
+	 *            length of the prefix
+	 * @return the word found; null if there is none
+	 */
+	public static String skipTarget(CharSequence word, int prefixLength) {
+		while (prefixLength > 0 && word.charAt(prefixLength - 1) == Character.MAX_VALUE)
+			prefixLength--;
+		if (prefixLength == 0)
+			return null;
+		StringBuilder target = new StringBuilder(word.subSequence(0, prefixLength));
+		target.setCharAt(prefixLength - 1, (char) (word.charAt(prefixLength - 1) + 1));
+		return target.toString();
+	}
+}
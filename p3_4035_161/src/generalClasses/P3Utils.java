@@ -1,8 +1,13 @@
 package generalClasses;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 
 /**
@@ -13,7 +18,7 @@ import java.util.ArrayList;
  *
  */
 public class P3Utils {
-	public static final int MAXFILENAMELENGTH = 20;
+	public static final int MAXFILENAMELENGTH = 255; // limit of file systems
 	public static final File IndexDirectoryPath = new File("p340354020data", "index");
 	public static final File DocsDirectoryPath = new File("p340354020data", "docs");
 
@@ -50,7 +55,7 @@ public class P3Utils {
 	 *            name to validate
 	 * @return true if valid, false otherwise
 	 */
-	private static boolean validFileName(String name) {
+	public static boolean validFileName(String name) {
 		if (name.length() > MAXFILENAMELENGTH)
 			return false;
 		return validName(name);
@@ -116,8 +121,8 @@ public class P3Utils {
 	}
 
 	/**
-	 * Writes given word to given Random Access File as one byte per
-	 * character and finalizes by writing a blank space.
+	 * Writes given word to given file (a Random Access File or a data stream)
+	 * as one byte per character and finalizes by writing a blank space.
 	 * 
 	 * @param word
 	 *            word to write
@@ -127,30 +132,53 @@ public class P3Utils {
 	 *             may throw this exception if an Input/Output error occurs
 	 *             while accessing the index directory.
 	 */
-	public static void writeWordToFile(String word, RandomAccessFile file) throws IOException {
+	public static void writeWordToFile(String word, DataOutput file) throws IOException {
 		for (int i = 0; i < word.length(); i++)
 			file.writeByte((byte) word.charAt(i));
 		file.writeByte((byte) ' ');
 	}
 
 	/**
-	 * Read next word from current file pointer in file.
+	 * Read next word from current file pointer in file (a Random Access File or
+	 * a data stream).
 	 * 
 	 * @param file
-	 *            the random access file corresponding to the main index
+	 *            the file corresponding to the main index or to an idx file
 	 * @return the next word
 	 * @throws IOException
 	 *             may throw this exception if an Input/Output error occurs
 	 *             while accessing the index directory.
 	 */
-	public static String readWord(RandomAccessFile file) throws IOException {
-		String word = "";
+	public static String readWord(DataInput file) throws IOException {
+		StringBuilder word = new StringBuilder();
 		char ch = (char) file.readByte();
-		for (int i = 1; ch != ' '; i++) {
-			word += ch;
+		while (ch != ' ') {
+			word.append(ch);
 			ch = (char) file.readByte();
 		}
-		return word;
+		return word.toString();
+	}
+
+	/**
+	 * Replaces a file by a new version of it, written completely in a
+	 * temporary file: the temporary file is forced to disk, and then renamed
+	 * to the file in one step. So, if the system stops at any time, the file
+	 * is found either as it was or as it is now, never half written.
+	 * 
+	 * @param tmpPath
+	 *            the temporary file, already closed
+	 * @param fPath
+	 *            the file to replace (or to create)
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public static void replaceFile(File tmpPath, File fPath) throws IOException {
+		try (FileChannel channel = FileChannel.open(tmpPath.toPath(), StandardOpenOption.WRITE)) {
+			channel.force(true);
+		}
+		Files.move(tmpPath.toPath(), fPath.toPath(), StandardCopyOption.ATOMIC_MOVE,
+				StandardCopyOption.REPLACE_EXISTING);
 	}
 
 }
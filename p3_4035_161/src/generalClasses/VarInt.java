@@ -0,0 +1,60 @@
+package generalClasses;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Variable-length encoding of int values, used in the files of the index.
+ * Each byte keeps 7 bits of the value, lowest bits first; the high bit of a
+ * byte is set if more bytes follow. So values below 128 take one byte and no
+ * value takes more than five. Lists of increasing values (docIDs,
+ * locations, ordinals) are written as the differences between consecutive
+ * values, which are small numbers.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class VarInt {
+
+	/**
+	 * Writes a value to given file (a Random Access File or a data stream).
+	 * 
+	 * @param value
+	 *            the value; a negative value takes five bytes
+	 * @param file
+	 *            file to write to
+	 * @return number of bytes written
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public static int write(int value, DataOutput file) throws IOException {
+		int bytes = 1;
+		while ((value & ~0x7F) != 0) {
+			file.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+			bytes++;
+		}
+		file.writeByte(value);
+		return bytes;
+	}
+
+	/**
+	 * Reads a value from the current position of buffer, and moves the
+	 * position after it.
+	 * 
+	 * @param buffer
+	 *            buffer to read from
+	 * @return the value
+	 */
+	public static int read(ByteBuffer buffer) {
+		int b = buffer.get();
+		int value = b & 0x7F;
+		for (int shift = 7; b < 0; shift += 7) {
+			b = buffer.get();
+			value |= (b & 0x7F) << shift;
+		}
+		return value;
+	}
+}
@@ -0,0 +1,26 @@
+package menuClasses;
+
+import ioManagementClasses.IOComponent;
+import systemClasses.SystemController;
+
+/**
+ * Action to execute the addition of every document in the docs directory to
+ * the system.
+ *
+ * @author Joel Torres
+ *
+ */
+public class AddAllDocumentsAction implements Action {
+
+	/**
+	 * Executes the addition of all documents by calling the corresponding bulk
+	 * add method inside System Controller.
+	 */
+	public void execute(Object arg) {
+		SystemController sc = (SystemController) arg;
+		IOComponent io = IOComponent.getComponent();
+		io.output("\nAdding all documents in docs directory to the index system:\n");
+		String statusMSG = sc.addAllDocuments();
+		io.output(statusMSG);
+	}
+}
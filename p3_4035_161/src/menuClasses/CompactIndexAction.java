@@ -0,0 +1,26 @@
+package menuClasses;
+
+import ioManagementClasses.IOComponent;
+import systemClasses.SystemController;
+
+/**
+ * Action to compact the index, discarding the entries that removed documents
+ * left in it.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class CompactIndexAction implements Action {
+
+	/**
+	 * Executes the compaction by calling the corresponding method inside
+	 * System Controller.
+	 */
+	public void execute(Object arg) {
+		SystemController sc = (SystemController) arg;
+		IOComponent io = IOComponent.getComponent();
+		io.output("\nCompacting the index:\n");
+		String statusMSG = sc.compactIndex();
+		io.output(statusMSG);
+	}
+}
@@ -14,7 +14,7 @@ public class MainMenu extends Menu {
 
 	/**
 	 * Main Menu object default constructor. Initializes main menu with the
-	 * options desired (in this case, 5 options).
+	 * options desired (in this case, 8 options).
 	 */
 	private MainMenu() {
 		super();
@@ -25,6 +25,9 @@ public class MainMenu extends Menu {
 		options.add(new Option("Remove a document", new RemoveDocumentAction()));
 		options.add(new Option("Request information about a document", new RequestInformationAction()));
 		options.add(new Option("Perform searches based on words", new PerformSearchesAction()));
+		options.add(new Option("Add all documents in docs directory", new AddAllDocumentsAction()));
+		options.add(new Option("Compact the index", new CompactIndexAction()));
+		options.add(new Option("Refresh out of date documents", new RefreshDocumentsAction()));
 		options.add(Option.EXIT);
 
 		super.InitializeMenu(title, options);
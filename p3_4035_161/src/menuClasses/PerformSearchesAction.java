@@ -1,15 +1,9 @@
 package menuClasses;
 
 import java.io.IOException;
-import java.util.AbstractMap;
 import java.util.ArrayList;
-import java.util.Map;
-import java.util.Map.Entry;
-import java.util.StringTokenizer;
 
-import dataManagement.DocumentIDX;
 import dataManagement.MatchingSearchDocument;
-import generalClasses.EntryComparator;
 import ioManagementClasses.IOComponent;
 import systemClasses.SystemController;
 
@@ -21,6 +15,7 @@ import systemClasses.SystemController;
  *
  */
 public class PerformSearchesAction implements Action {
+	private static final int MAXRESULTS = 20; // documents shown per search
 	private static IOComponent io = IOComponent.getComponent();
 
 	/**
@@ -34,15 +29,15 @@ public class PerformSearchesAction implements Action {
 		while (answer.equalsIgnoreCase("y") || answer.equalsIgnoreCase("yes")) {
 			io.output("\nSearching Based on Words:\n");
 			String words = io.getInput("\nEnter words to search for (separate by spaces): ");
-			Map<Integer, MatchingSearchDocument> matchingDocuments = null;
+			ArrayList<MatchingSearchDocument> rankedDocuments = null;
 			try {
-				StringTokenizer wordsTokens = new StringTokenizer(words);
-				ArrayList<String> wordsList = constructListOfSearchWords(wordsTokens);
-				matchingDocuments = sc.search(wordsList);
-				if (matchingDocuments.isEmpty())
+				rankedDocuments = sc.rankedSearch(words, MAXRESULTS);
+				if (rankedDocuments.isEmpty())
 					io.output("No document matches this search.");
 				else
-					processMatchingDocuments(matchingDocuments, wordsList.size());
+					processMatchingDocuments(rankedDocuments);
+			} catch (IllegalArgumentException e) {
+				io.output(e.getMessage());
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -51,19 +46,16 @@ public class PerformSearchesAction implements Action {
 	}
 
 	/**
-	 * Processes matching documents from the search by ranking them and then
-	 * displaying the desired documents.
+	 * Processes matching documents from the search by displaying the desired
+	 * documents.
 	 * 
-	 * @param matchingDocuments
-	 *            map containing entries with the docID and the corresponding
-	 *            document that matches the search
+	 * @param rankedDocuments
+	 *            the documents matching the search already ranked by relevance.
 	 * @throws IOException
 	 *             may throw this exception if an Input/Output error occurs
 	 *             while accessing the corresponding directory.
 	 */
-	private void processMatchingDocuments(Map<Integer, MatchingSearchDocument> matchingDocuments, int n)
-			throws IOException {
-		ArrayList<MatchingSearchDocument> rankedDocuments = rankMatchingDocuments(matchingDocuments, n);
+	private void processMatchingDocuments(ArrayList<MatchingSearchDocument> rankedDocuments) throws IOException {
 		displayHeaderLinesMatchingDocuments(rankedDocuments);
 		String answer = "y";
 		while (answer.equalsIgnoreCase("y") || answer.equalsIgnoreCase("yes")) {
@@ -97,63 +89,4 @@ public class PerformSearchesAction implements Action {
 			rankedDocuments.get(i).displayDocument(3);
 		}
 	}
-
-	/**
-	 * Ranks the document matching the search with the established order.
-	 * 
-	 * @param matchingDocuments
-	 *            map containing entries of docID and the matching document.
-	 * @return a list with the ranked documents (in this case that list is in
-	 *         ascending order of ranks)
-	 * @throws IOException
-	 *             may throw this exception if an Input/Output error occurs
-	 *             while accessing the corresponding directory.
-	 */
-	private ArrayList<MatchingSearchDocument> rankMatchingDocuments(
-			Map<Integer, MatchingSearchDocument> matchingDocuments, int n) throws IOException {
-
-		ArrayList<MatchingSearchDocument> rankedDocuments = new ArrayList<>();
-		ArrayList<Entry<Double, MatchingSearchDocument>> ranking = new ArrayList<>();
-		for (Entry<Integer, MatchingSearchDocument> e : matchingDocuments.entrySet()) {
-			ArrayList<String> kd = e.getValue().getMatchingWords();
-			DocumentIDX docIDX = e.getValue().getDocIDX();
-			double r = kd.size(); // number of words that match in this doc
-			double pd = (double) r / n;
-			double rd = 0;
-			// compute relative frequency
-			for (int i = 0; i < r; i++) {
-				String word = kd.get(i);
-				ArrayList<Integer> wordLocations = (ArrayList<Integer>) docIDX.getWordLocations(word);
-				rd += (double) wordLocations.size() / docIDX.numberOfRegisteredWords();
-			}
-			double docRank = pd + rd;
-			ranking.add(new AbstractMap.SimpleEntry<>(docRank, e.getValue()));
-		}
-		// sort ranking list depending on its docRank (increasing since when
-		// displayed they'll be showed in decreasing)
-		// tranfer MatchingSearchDocuments to rankedDocuments and end ranking process
-		ranking.sort(new EntryComparator());
-		for (Entry<Double, MatchingSearchDocument> msd : ranking)
-			rankedDocuments.add(msd.getValue());
-		return rankedDocuments;
-	}
-
-	/**
-	 * Given a tokenizer, builds a list of those words inside it (the search
-	 * words).
-	 * 
-	 * @param wordsTokens
-	 *            tokenizer of search parameters
-	 * @return list of those words
-	 */
-	private ArrayList<String> constructListOfSearchWords(StringTokenizer wordsTokens) {
-		ArrayList<String> uniqueWordsList = new ArrayList<>();
-		while (wordsTokens.hasMoreTokens()) {
-			String word = wordsTokens.nextToken();
-			if (!uniqueWordsList.contains(word))
-				uniqueWordsList.add(word);
-		}
-
-		return uniqueWordsList;
-	}
 }
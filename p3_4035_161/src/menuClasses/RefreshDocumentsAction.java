@@ -0,0 +1,26 @@
+package menuClasses;
+
+import ioManagementClasses.IOComponent;
+import systemClasses.SystemController;
+
+/**
+ * Action to index again the documents whose files changed since they were
+ * indexed.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class RefreshDocumentsAction implements Action {
+
+	/**
+	 * Executes the refresh by calling the corresponding method inside System
+	 * Controller.
+	 */
+	public void execute(Object arg) {
+		SystemController sc = (SystemController) arg;
+		IOComponent io = IOComponent.getComponent();
+		io.output("\nRefreshing out of date documents:\n");
+		String statusMSG = sc.refreshDocuments();
+		io.output(statusMSG);
+	}
+}
@@ -1,12 +1,14 @@
 package menuClasses;
 
+import java.util.Arrays;
+
 import ioManagementClasses.IOComponent;
 import systemClasses.SystemController;
 
 /**
  * Action to remove a document from the system. Receives the name of the
- * document to remove and executes the corresponding functions inside System
- * Controller.
+ * document to remove, or the names of many documents separated by spaces, and
+ * executes the corresponding functions inside System Controller.
  * 
  * @author Joel Torres
  *
@@ -21,9 +23,13 @@ public class RemoveDocumentAction implements Action {
 		SystemController sc = (SystemController) arg;
 		IOComponent io = IOComponent.getComponent();
 		io.output("\nRemoving a document from the system:\n");
-		String docName = io.getInput("\nEnter name of the document to remove: ").trim();
+		String docName = io.getInput("\nEnter name of the document to remove (or names separated by spaces): ")
+				.trim();
 		String statusMSG = null;
-		statusMSG = sc.removeDocument(docName);
+		if (docName.contains(" ")) // many documents removed in one pass
+			statusMSG = sc.removeDocuments(Arrays.asList(docName.split("\\s+")));
+		else
+			statusMSG = sc.removeDocument(docName);
 		io.output(statusMSG);
 	}
 
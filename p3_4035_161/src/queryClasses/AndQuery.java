@@ -0,0 +1,106 @@
+package queryClasses;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeSet;
+
+import generalClasses.IntList;
+
+/**
+ * Query satisfied by the documents that satisfy all of its operands.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class AndQuery extends Query {
+	private ArrayList<Query> operands;
+
+	/**
+	 * Creates the conjunction of the given queries.
+	 * 
+	 * @param operands
+	 *            the queries; at least two
+	 */
+	public AndQuery(ArrayList<Query> operands) {
+		this.operands = operands;
+	}
+
+	/**
+	 * The lists of the operands that are not negated are intersected, from the
+	 * shortest to the longest, so that the candidates are reduced as soon as
+	 * possible. Then, the documents of the negated operands are subtracted.
+	 */
+	public IntList evaluate(QueryContext context) throws IOException {
+		ArrayList<IntList> included = new ArrayList<>();
+		ArrayList<Query> excluded = new ArrayList<>();
+		for (Query operand : operands)
+			if (operand instanceof NotQuery)
+				excluded.add(((NotQuery) operand).getNegated());
+			else
+				included.add(operand.evaluate(context));
+
+		IntList docIDs;
+		if (included.isEmpty())
+			docIDs = context.getAllDocIDs();
+		else {
+			included.sort((l1, l2) -> Integer.compare(l1.size(), l2.size()));
+			docIDs = included.get(0);
+			for (int i = 1; i < included.size() && !docIDs.isEmpty(); i++)
+				docIDs = DocIDLists.intersection(docIDs, included.get(i));
+		}
+		for (int i = 0; i < excluded.size() && !docIDs.isEmpty(); i++)
+			docIDs = DocIDLists.difference(docIDs, context.evaluateNegated(excluded.get(i)));
+		return docIDs;
+	}
+
+	/**
+	 * Rewrites every operand.
+	 */
+	public Query rewrite(QueryContext context) throws IllegalArgumentException {
+		ArrayList<Query> rewritten = new ArrayList<>(operands.size());
+		for (Query operand : operands)
+			rewritten.add(operand.rewrite(context));
+		return new AndQuery(rewritten);
+	}
+
+	/**
+	 * Adds the words of all the operands.
+	 */
+	public void collectWords(ArrayList<String> words) {
+		for (Query operand : operands)
+			operand.collectWords(words);
+	}
+
+	/**
+	 * Adds the words of all the operands, with their weights.
+	 */
+	public void collectWeights(Map<String, Double> weights) {
+		for (Query operand : operands)
+			operand.collectWeights(weights);
+	}
+
+	/**
+	 * Adds the proximity clauses of all the operands.
+	 */
+	public int countProximityClauses() {
+		int count = 0;
+		for (Query operand : operands)
+			count += operand.countProximityClauses();
+		return count;
+	}
+
+	/**
+	 * Canonical text of the query: operands without repetitions and sorted,
+	 * so that equivalent queries written in different order have the same
+	 * text.
+	 * 
+	 * @return the text
+	 */
+	public String toString() {
+		TreeSet<String> texts = new TreeSet<>();
+		for (Query operand : operands)
+			texts.add(operand.toString());
+		return texts.size() == 1 ? texts.first() : "(" + String.join(" AND ", texts) + ")";
+	}
+}
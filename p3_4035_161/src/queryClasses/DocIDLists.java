@@ -0,0 +1,125 @@
+package queryClasses;
+
+import generalClasses.IntList;
+
+/**
+ * Operations over lists of docIDs in increasing order, as used to evaluate
+ * queries. The lists given are not modified.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class DocIDLists {
+
+	/**
+	 * Intersection of two lists. Each docID of the shortest list is searched
+	 * in the longest one by galloping: from the position of the previous
+	 * docID, steps of 1, 2, 4, ... are taken until a greater docID is found,
+	 * and then a binary search is done in the last step. So the cost depends
+	 * mostly on the length of the shortest list.
+	 * 
+	 * @param list1
+	 *            a list
+	 * @param list2
+	 *            the other list
+	 * @return the docIDs in both lists
+	 */
+	public static IntList intersection(IntList list1, IntList list2) {
+		IntList shortList = list1.size() <= list2.size() ? list1 : list2;
+		IntList longList = shortList == list1 ? list2 : list1;
+		IntList result = new IntList(shortList.size());
+		int position = 0;
+		for (int i = 0; i < shortList.size() && position < longList.size(); i++) {
+			int docID = shortList.get(i);
+			position = gallop(longList, position, docID);
+			if (position < longList.size() && longList.get(position) == docID)
+				result.add(docID);
+		}
+		return result;
+	}
+
+	/**
+	 * Difference of two lists.
+	 * 
+	 * @param list1
+	 *            the list whose docIDs are kept
+	 * @param list2
+	 *            the list whose docIDs are removed
+	 * @return the docIDs in list1 that are not in list2
+	 */
+	public static IntList difference(IntList list1, IntList list2) {
+		IntList result = new IntList(list1.size());
+		int position = 0;
+		for (int i = 0; i < list1.size(); i++) {
+			int docID = list1.get(i);
+			position = gallop(list2, position, docID);
+			if (position == list2.size() || list2.get(position) != docID)
+				result.add(docID);
+		}
+		return result;
+	}
+
+	/**
+	 * Union of two lists.
+	 * 
+	 * @param list1
+	 *            a list
+	 * @param list2
+	 *            the other list
+	 * @return the docIDs in any of the lists
+	 */
+	public static IntList union(IntList list1, IntList list2) {
+		IntList result = new IntList(list1.size() + list2.size());
+		int i = 0, j = 0;
+		while (i < list1.size() && j < list2.size()) {
+			int docID1 = list1.get(i), docID2 = list2.get(j);
+			if (docID1 <= docID2) {
+				result.add(docID1);
+				i++;
+				if (docID1 == docID2)
+					j++;
+			} else {
+				result.add(docID2);
+				j++;
+			}
+		}
+		for (; i < list1.size(); i++)
+			result.add(list1.get(i));
+		for (; j < list2.size(); j++)
+			result.add(list2.get(j));
+		return result;
+	}
+
+	/**
+	 * Finds the first position, from a given one, of a docID not less than
+	 * the given docID.
+	 * 
+	 * @param list
+	 *            the list
+	 * @param from
+	 *            position where the search begins
+	 * @param docID
+	 *            the docID
+	 * @return the position; list.size() if all the docIDs from position from
+	 *         are less than docID
+	 */
+	private static int gallop(IntList list, int from, int docID) {
+		int low = from, step = 1;
+		int high = from;
+		while (high < list.size() && list.get(high) < docID) {
+			low = high + 1;
+			high = from + step;
+			step *= 2;
+		}
+		high = Math.min(high, list.size());
+		// first docID not less than docID is in positions [low, high]
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (list.get(middle) < docID)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		return low;
+	}
+}
@@ -0,0 +1,95 @@
+package queryClasses;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeMap;
+
+import generalClasses.IntList;
+
+/**
+ * Query satisfied by the documents that contain a word similar to a given
+ * one: a word at edit distance at most k from it (word~k), so that searches
+ * still find documents when a word is mistyped. Before the words of the query
+ * are collected, it is replaced by the words of the index that are similar
+ * (see rewrite()); each one weighs 1 / (1 + d) in the rank of a document,
+ * where d is its edit distance. If more than MAXEXPANSIONS words are
+ * similar, only the closest ones are kept.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class FuzzyQuery extends Query {
+	public static final int MAXDISTANCE = 2;
+	public static final int MAXEXPANSIONS = 64;
+	private String word; // in lower case
+	private int maxDistance; // k
+
+	/**
+	 * Creates the query word~k.
+	 * 
+	 * @param word
+	 *            the word; it is treated as in lower case
+	 * @param maxDistance
+	 *            maximum edit distance k, from 1 to MAXDISTANCE
+	 */
+	public FuzzyQuery(String word, int maxDistance) {
+		this.word = word.toLowerCase();
+		this.maxDistance = maxDistance;
+	}
+
+	/**
+	 * Finds the words of the index similar to the word, keeping the
+	 * MAXEXPANSIONS closest ones.
+	 * 
+	 * @param context
+	 *            gives access to the main index
+	 * @return map whose entries are (word, edit distance), in increasing order
+	 *         of word
+	 */
+	private TreeMap<String, Integer> expand(QueryContext context) {
+		TreeMap<String, Integer> words = context.getSimilarWords(word, maxDistance);
+		for (int distance = maxDistance; words.size() > MAXEXPANSIONS && distance > 0; distance--)
+			words.values().removeIf(Integer.valueOf(distance)::equals);
+		return words;
+	}
+
+	/**
+	 * Evaluated as the union of the lists of the similar words.
+	 */
+	public IntList evaluate(QueryContext context) throws IOException {
+		IntList docIDs = new IntList();
+		for (String similar : expand(context).keySet())
+			docIDs = DocIDLists.union(docIDs, new WordQuery(similar).evaluate(context));
+		return docIDs;
+	}
+
+	/**
+	 * Rewritten as the OR of the similar words, each with its weight; if no
+	 * word is similar, the query is not rewritten.
+	 */
+	public Query rewrite(QueryContext context) {
+		ArrayList<Query> words = new ArrayList<>();
+		for (Map.Entry<String, Integer> e : expand(context).entrySet())
+			words.add(new WordQuery(e.getKey(), 1.0 / (1 + e.getValue())));
+		if (words.isEmpty())
+			return this;
+		return words.size() == 1 ? words.get(0) : new OrQuery(words);
+	}
+
+	/**
+	 * Adds no word, since the similar words are not known until the query is
+	 * rewritten.
+	 */
+	public void collectWords(ArrayList<String> words) {
+	}
+
+	/**
+	 * Canonical text of the query: word~k, with the word in lower case.
+	 * 
+	 * @return the text
+	 */
+	public String toString() {
+		return word + "~" + maxDistance;
+	}
+}
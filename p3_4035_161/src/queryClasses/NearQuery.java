@@ -0,0 +1,126 @@
+package queryClasses;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import dataManagement.DocumentIDX;
+import generalClasses.IntList;
+
+/**
+ * Query satisfied by the documents where two words or phrases occur near each
+ * other, in any order: with at most k - 1 words between them.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class NearQuery extends Query {
+	private PositionalQuery left, right;
+	private int distance; // k
+
+	/**
+	 * Creates the query left NEAR/k right.
+	 * 
+	 * @param left
+	 *            a word or phrase
+	 * @param right
+	 *            the other word or phrase
+	 * @param distance
+	 *            maximum distance k between them: 1 if they must be adjacent
+	 */
+	public NearQuery(PositionalQuery left, PositionalQuery right, int distance) {
+		this.left = left;
+		this.right = right;
+		this.distance = distance;
+	}
+
+	/**
+	 * The candidates are the documents that satisfy both operands; then, their
+	 * positions are merged in each candidate to verify that they are near.
+	 */
+	public IntList evaluate(QueryContext context) throws IOException {
+		IntList candidates = DocIDLists.intersection(((Query) left).evaluate(context),
+				((Query) right).evaluate(context));
+		ArrayList<String> words = new ArrayList<>();
+		collectWords(words);
+
+		IntList docIDs = new IntList();
+		for (int i = 0; i < candidates.size(); i++) {
+			DocumentIDX docIDX = context.getDocumentIDX(candidates.get(i), words);
+			int matches = countNearPositions(left.positions(docIDX), left.length(), right.positions(docIDX),
+					right.length());
+			if (matches > 0) {
+				docIDs.add(candidates.get(i));
+				context.registerProximityMatches(candidates.get(i), matches);
+			}
+		}
+		return docIDs;
+	}
+
+	/**
+	 * Counts the occurrences of the left operand that have an occurrence of the
+	 * right one near. The distance between two occurrences that do not overlap
+	 * is the difference between the position of the second one and the
+	 * position of the last word of the first one.
+	 * 
+	 * @param leftPositions
+	 *            positions of the left operand, in increasing order
+	 * @param leftLength
+	 *            number of words of the left operand
+	 * @param rightPositions
+	 *            positions of the right operand, in increasing order
+	 * @param rightLength
+	 *            number of words of the right operand
+	 * @return number of occurrences
+	 */
+	private int countNearPositions(IntList leftPositions, int leftLength, IntList rightPositions,
+			int rightLength) {
+		int count = 0;
+		int first = 0; // first right position that may be near
+		for (int i = 0; i < leftPositions.size(); i++) {
+			int position = leftPositions.get(i);
+			int low = position - (rightLength - 1) - distance; // right before
+			int high = position + (leftLength - 1) + distance; // right after
+			while (first < rightPositions.size() && rightPositions.get(first) < low)
+				first++;
+			for (int j = first; j < rightPositions.size() && rightPositions.get(j) <= high; j++) {
+				int other = rightPositions.get(j);
+				if (other + rightLength - 1 < position || other > position + leftLength - 1) {
+					count++; // no overlap
+					break;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Adds the words of both operands.
+	 */
+	public void collectWords(ArrayList<String> words) {
+		left.collectWords(words);
+		right.collectWords(words);
+	}
+
+	/**
+	 * The query is one proximity clause, plus those of its operands.
+	 */
+	public int countProximityClauses() {
+		return 1 + ((Query) left).countProximityClauses() + ((Query) right).countProximityClauses();
+	}
+
+	/**
+	 * Canonical text of the query: operands sorted, since the order does not
+	 * matter.
+	 * 
+	 * @return the text
+	 */
+	public String toString() {
+		String text1 = left.toString(), text2 = right.toString();
+		if (text1.compareTo(text2) > 0) {
+			String text = text1;
+			text1 = text2;
+			text2 = text;
+		}
+		return "(" + text1 + " NEAR/" + distance + " " + text2 + ")";
+	}
+}
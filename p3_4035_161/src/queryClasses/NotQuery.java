@@ -0,0 +1,66 @@
+package queryClasses;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import generalClasses.IntList;
+
+/**
+ * Query satisfied by the documents that do not satisfy another query.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class NotQuery extends Query {
+	private Query negated;
+
+	/**
+	 * Creates the negation of a query.
+	 * 
+	 * @param negated
+	 *            the query negated
+	 */
+	public NotQuery(Query negated) {
+		this.negated = negated;
+	}
+
+	/**
+	 * Getter for the query negated.
+	 * 
+	 * @return the query
+	 */
+	public Query getNegated() {
+		return negated;
+	}
+
+	/**
+	 * Evaluated as the difference between all the documents in the index and
+	 * those that satisfy the negated query. Inside an AND query, the
+	 * difference is taken from the other operands instead (see AndQuery).
+	 */
+	public IntList evaluate(QueryContext context) throws IOException {
+		return DocIDLists.difference(context.getAllDocIDs(), context.evaluateNegated(negated));
+	}
+
+	/**
+	 * Rewrites the negated query.
+	 */
+	public Query rewrite(QueryContext context) throws IllegalArgumentException {
+		return new NotQuery(negated.rewrite(context));
+	}
+
+	/**
+	 * Adds no word, since the documents do not contain the negated ones.
+	 */
+	public void collectWords(ArrayList<String> words) {
+	}
+
+	/**
+	 * Canonical text of the query.
+	 * 
+	 * @return the text
+	 */
+	public String toString() {
+		return "NOT " + negated;
+	}
+}
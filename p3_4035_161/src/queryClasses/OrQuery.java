@@ -0,0 +1,88 @@
+package queryClasses;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.TreeSet;
+
+import generalClasses.IntList;
+
+/**
+ * Query satisfied by the documents that satisfy at least one of its operands.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class OrQuery extends Query {
+	private ArrayList<Query> operands;
+
+	/**
+	 * Creates the disjunction of the given queries.
+	 * 
+	 * @param operands
+	 *            the queries; at least two
+	 */
+	public OrQuery(ArrayList<Query> operands) {
+		this.operands = operands;
+	}
+
+	/**
+	 * Evaluated as the union of the lists of the operands.
+	 */
+	public IntList evaluate(QueryContext context) throws IOException {
+		IntList docIDs = operands.get(0).evaluate(context);
+		for (int i = 1; i < operands.size(); i++)
+			docIDs = DocIDLists.union(docIDs, operands.get(i).evaluate(context));
+		return docIDs;
+	}
+
+	/**
+	 * Rewrites every operand.
+	 */
+	public Query rewrite(QueryContext context) throws IllegalArgumentException {
+		ArrayList<Query> rewritten = new ArrayList<>(operands.size());
+		for (Query operand : operands)
+			rewritten.add(operand.rewrite(context));
+		return new OrQuery(rewritten);
+	}
+
+	/**
+	 * Adds the words of all the operands.
+	 */
+	public void collectWords(ArrayList<String> words) {
+		for (Query operand : operands)
+			operand.collectWords(words);
+	}
+
+	/**
+	 * Adds the words of all the operands, with their weights.
+	 */
+	public void collectWeights(Map<String, Double> weights) {
+		for (Query operand : operands)
+			operand.collectWeights(weights);
+	}
+
+	/**
+	 * Adds the proximity clauses of all the operands.
+	 */
+	public int countProximityClauses() {
+		int count = 0;
+		for (Query operand : operands)
+			count += operand.countProximityClauses();
+		return count;
+	}
+
+	/**
+	 * Canonical text of the query: operands without repetitions and sorted,
+	 * so that equivalent queries written in different order have the same
+	 * text.
+	 * 
+	 * @return the text
+	 */
+	public String toString() {
+		TreeSet<String> texts = new TreeSet<>();
+		for (Query operand : operands)
+			texts.add(operand.toString());
+		return texts.size() == 1 ? texts.first() : "(" + String.join(" OR ", texts) + ")";
+	}
+}
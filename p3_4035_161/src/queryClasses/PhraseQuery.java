@@ -0,0 +1,100 @@
+package queryClasses;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import dataManagement.DocumentIDX;
+import generalClasses.IntList;
+
+/**
+ * Query satisfied by the documents that contain a sequence of adjacent words.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class PhraseQuery extends Query implements PositionalQuery {
+	private ArrayList<WordQuery> words;
+
+	/**
+	 * Creates the query of a phrase.
+	 * 
+	 * @param words
+	 *            the words of the phrase, in order; at least two
+	 */
+	public PhraseQuery(ArrayList<WordQuery> words) {
+		this.words = words;
+	}
+
+	/**
+	 * The candidates are the documents that contain all the words; then, the
+	 * ordinals of the words are merged in each candidate to verify that they
+	 * are adjacent.
+	 */
+	public IntList evaluate(QueryContext context) throws IOException {
+		ArrayList<Query> operands = new ArrayList<>(words);
+		IntList candidates = new AndQuery(operands).evaluate(context);
+		ArrayList<String> phraseWords = new ArrayList<>();
+		collectWords(phraseWords);
+
+		IntList docIDs = new IntList();
+		for (int i = 0; i < candidates.size(); i++) {
+			DocumentIDX docIDX = context.getDocumentIDX(candidates.get(i), phraseWords);
+			IntList positions = positions(docIDX);
+			if (!positions.isEmpty()) {
+				docIDs.add(candidates.get(i));
+				context.registerProximityMatches(candidates.get(i), positions.size());
+			}
+		}
+		return docIDs;
+	}
+
+	/**
+	 * An occurrence of the phrase begins at ordinal p if its i-th word is at
+	 * ordinal p + i, for every i. So the positions are the intersection of the
+	 * ordinals of each word i moved back by i.
+	 */
+	public IntList positions(DocumentIDX docIDX) {
+		IntList positions = words.get(0).positions(docIDX);
+		for (int i = 1; i < words.size() && !positions.isEmpty(); i++) {
+			IntList ordinals = words.get(i).positions(docIDX);
+			IntList moved = new IntList(ordinals.size());
+			for (int j = 0; j < ordinals.size(); j++)
+				moved.add(ordinals.get(j) - i);
+			positions = DocIDLists.intersection(positions, moved);
+		}
+		return positions;
+	}
+
+	/**
+	 * Number of words in the phrase.
+	 * 
+	 * @return the length
+	 */
+	public int length() {
+		return words.size();
+	}
+
+	/**
+	 * Adds the words of the phrase.
+	 */
+	public void collectWords(ArrayList<String> words) {
+		for (WordQuery word : this.words)
+			word.collectWords(words);
+	}
+
+	/**
+	 * A phrase is one proximity clause.
+	 */
+	public int countProximityClauses() {
+		return 1;
+	}
+
+	/**
+	 * Canonical text of the query: the words in quotes.
+	 * 
+	 * @return the text
+	 */
+	public String toString() {
+		return "\"" + String.join(" ", words.stream().map(WordQuery::toString).toArray(String[]::new)) + "\"";
+	}
+}
@@ -0,0 +1,44 @@
+package queryClasses;
+
+import java.util.ArrayList;
+
+import dataManagement.DocumentIDX;
+import generalClasses.IntList;
+
+/**
+ * A query whose occurrences in a document have positions: a word or a phrase.
+ * Positions are ordinals of words in the document (see DocumentIDX), so that
+ * two words are adjacent if their ordinals differ by one.
+ * 
+ * @author Joel Torres
+ *
+ */
+public interface PositionalQuery {
+
+	/**
+	 * Finds the occurrences of this query in a document.
+	 * 
+	 * @param docIDX
+	 *            data of the document, with the ordinals of the words of this
+	 *            query loaded
+	 * @return the ordinals of the first word of each occurrence, in increasing
+	 *         order
+	 */
+	IntList positions(DocumentIDX docIDX);
+
+	/**
+	 * Number of words of each occurrence of this query.
+	 * 
+	 * @return the length
+	 */
+	int length();
+
+	/**
+	 * Adds to the given list the words of this query; words already in the
+	 * list are not added again.
+	 * 
+	 * @param words
+	 *            list of words
+	 */
+	void collectWords(ArrayList<String> words);
+}
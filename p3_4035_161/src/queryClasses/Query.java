@@ -0,0 +1,82 @@
+package queryClasses;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+
+import generalClasses.IntList;
+
+/**
+ * A search query: a word, a wildcard pattern, a fuzzy word, a phrase, or a
+ * combination of queries with the operators AND, OR, NOT and NEAR (see
+ * QueryParser). A query is evaluated over the lists of pairs (docID, f) of
+ * the main index, which are in increasing order of docID.
+ * 
+ * @author Joel Torres
+ *
+ */
+public abstract class Query {
+
+	/**
+	 * Finds the documents that satisfy this query.
+	 * 
+	 * @param context
+	 *            gives access to the lists of pairs of the main index
+	 * @return ids of the documents, in increasing order
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public abstract IntList evaluate(QueryContext context) throws IOException;
+
+	/**
+	 * Adds to the given list the words of this query that a document must
+	 * contain to satisfy it, or may contain (the words that are not negated by
+	 * NOT). Words already in the list are not added again.
+	 * 
+	 * @param words
+	 *            list of words
+	 */
+	public abstract void collectWords(ArrayList<String> words);
+
+	/**
+	 * Replaces the wildcard patterns in this query by the words of the index
+	 * that match them (see WildcardQuery). Must be done before the words of
+	 * the query are collected.
+	 * 
+	 * @param context
+	 *            gives access to the main index
+	 * @return the query rewritten; this query if it has no patterns
+	 * @throws IllegalArgumentException
+	 *             if a pattern matches too many words
+	 */
+	public Query rewrite(QueryContext context) throws IllegalArgumentException {
+		return this;
+	}
+
+	/**
+	 * Adds to the given map the words collected by collectWords(), with their
+	 * weights in the rank of a document: 1, except for the words that replace
+	 * a fuzzy word (see FuzzyQuery). A word collected more than once keeps its
+	 * highest weight.
+	 * 
+	 * @param weights
+	 *            map whose entries are (word, weight)
+	 */
+	public void collectWeights(Map<String, Double> weights) {
+		ArrayList<String> words = new ArrayList<>();
+		collectWords(words);
+		for (String word : words)
+			weights.merge(word, 1.0, Math::max);
+	}
+
+	/**
+	 * Number of phrases and NEAR operators in this query that are not negated.
+	 * The documents that satisfy them get a higher rank.
+	 * 
+	 * @return number of proximity clauses
+	 */
+	public int countProximityClauses() {
+		return 0;
+	}
+}
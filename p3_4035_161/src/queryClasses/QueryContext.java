@@ -0,0 +1,217 @@
+package queryClasses;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Hashtable;
+import java.util.Map;
+import java.util.TreeMap;
+
+import dataManagement.DocumentIDX;
+import dataManagement.DocumentIDXCache;
+import dataManagement.IndexSnapshot;
+import dataManagement.MainIndexManager;
+import dataManagement.PostingList;
+import generalClasses.IntList;
+
+/**
+ * Gives the queries access to the data of the index while they are evaluated.
+ * The list of pairs of each word is read from the main index only once per
+ * evaluation, and all of them are read from the snapshot of the main index
+ * taken when the context is created (see IndexSnapshot), so that documents
+ * added or removed during the evaluation are not seen by half of it. The
+ * snapshot is acquired, so the idx files of its documents are kept until the
+ * context is closed.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class QueryContext {
+	private static final PostingList NOPAIRS = new PostingList(1);
+	private MainIndexManager mim;
+	private IndexSnapshot snapshot;
+	private Map<String, PostingList> docsLists; // lists already read
+	private IntList allDocIDs; // null until needed
+	private Map<Integer, ProximityMatches> proximityMatches; // by docID
+	private int negationDepth; // number of NOTs around current evaluation
+
+	/**
+	 * Creates the context of the evaluation of a query.
+	 * 
+	 * @param mim
+	 *            manager of main index data
+	 */
+	public QueryContext(MainIndexManager mim) {
+		this.mim = mim;
+		snapshot = mim.acquireSnapshot();
+		docsLists = new Hashtable<>();
+		allDocIDs = null;
+		proximityMatches = new Hashtable<>();
+		negationDepth = 0;
+	}
+
+	/**
+	 * Occurrences of the proximity clauses (phrases and NEAR operators) of a
+	 * query in a document.
+	 */
+	public static class ProximityMatches {
+		private int clauses; // number of clauses that occur in document
+		private int occurrences; // total number of their occurrences
+
+		/**
+		 * Getter for the number of clauses that occur in the document.
+		 * 
+		 * @return number of clauses
+		 */
+		public int getClauses() {
+			return clauses;
+		}
+
+		/**
+		 * Getter for the total number of occurrences of the clauses.
+		 * 
+		 * @return number of occurrences
+		 */
+		public int getOccurrences() {
+			return occurrences;
+		}
+	}
+
+	/**
+	 * Releases the snapshot of the main index. Must be called once, when the
+	 * evaluation is done and the idx files of the documents found have been
+	 * read.
+	 */
+	public void close() {
+		mim.releaseSnapshot(snapshot);
+	}
+
+	/**
+	 * Gets the list of pairs (docID, f) of a word, in increasing order of
+	 * docID.
+	 * 
+	 * @param word
+	 *            the word, in lower case
+	 * @return the list; an empty list if the word is not in the index
+	 */
+	public PostingList getDocsList(String word) {
+		PostingList wordDocsList = docsLists.get(word);
+		if (wordDocsList == null) {
+			wordDocsList = snapshot.getDocsList(word);
+			if (wordDocsList == null)
+				wordDocsList = NOPAIRS;
+			docsLists.put(word, wordDocsList);
+		}
+		return wordDocsList;
+	}
+
+	/**
+	 * Finds the words in the index that match a pattern (see
+	 * IndexSnapshot.getMatchingWords()).
+	 * 
+	 * @param pattern
+	 *            the pattern, in lower case
+	 * @param max
+	 *            maximum number of words wanted
+	 * @return the words found, in increasing order; more than max if there are
+	 *         more than max
+	 */
+	public ArrayList<String> getMatchingWords(String pattern, int max) {
+		return snapshot.getMatchingWords(pattern, max);
+	}
+
+	/**
+	 * Finds the words in the index similar to a term (see
+	 * IndexSnapshot.getSimilarWords()).
+	 * 
+	 * @param term
+	 *            the term, in lower case
+	 * @param maxDistance
+	 *            maximum edit distance
+	 * @return map whose entries are (word, edit distance), in increasing order
+	 *         of word
+	 */
+	public TreeMap<String, Integer> getSimilarWords(String term, int maxDistance) {
+		return snapshot.getSimilarWords(term, maxDistance);
+	}
+
+	/**
+	 * Gets the data of a document with the locations and ordinals of the given
+	 * words loaded, from the shared cache of DocumentIDX objects.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @param words
+	 *            the words, in lower case
+	 * @return data of the document
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public DocumentIDX getDocumentIDX(int docID, ArrayList<String> words) throws IOException {
+		return DocumentIDXCache.getInstance().getDocumentIDXWithOrdinals(docID, words);
+	}
+
+	/**
+	 * Evaluates a query that is negated by NOT. The proximity clauses
+	 * satisfied inside it are not registered.
+	 * 
+	 * @param query
+	 *            the negated query
+	 * @return ids of the documents that satisfy query, in increasing order
+	 * @throws IOException
+	 *             may throw this exception if an Input/Output error occurs
+	 *             while accessing the index directory.
+	 */
+	public IntList evaluateNegated(Query query) throws IOException {
+		negationDepth++;
+		try {
+			return query.evaluate(this);
+		} finally {
+			negationDepth--;
+		}
+	}
+
+	/**
+	 * Registers that a proximity clause occurs in a document, unless it is
+	 * negated.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @param occurrences
+	 *            number of occurrences of the clause in the document
+	 */
+	public void registerProximityMatches(int docID, int occurrences) {
+		if (negationDepth > 0)
+			return;
+		ProximityMatches matches = proximityMatches.get(docID);
+		if (matches == null) {
+			matches = new ProximityMatches();
+			proximityMatches.put(docID, matches);
+		}
+		matches.clauses++;
+		matches.occurrences += occurrences;
+	}
+
+	/**
+	 * Gets the occurrences of the proximity clauses registered for a document.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @return the occurrences; null if none
+	 */
+	public ProximityMatches getProximityMatches(int docID) {
+		return proximityMatches.get(docID);
+	}
+
+	/**
+	 * Gets the ids of all the documents in the snapshot, which are needed to
+	 * evaluate a negation that is not part of an AND query.
+	 * 
+	 * @return the ids, in increasing order
+	 */
+	public IntList getAllDocIDs() {
+		if (allDocIDs == null)
+			allDocIDs = snapshot.getDocIDs();
+		return allDocIDs;
+	}
+}
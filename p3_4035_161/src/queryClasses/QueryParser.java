@@ -0,0 +1,289 @@
+package queryClasses;
+
+import java.util.ArrayList;
+
+/**
+ * Parser of the text of a search query. The grammar is:
+ * 
+ * query := and-query { [OR] and-query }
+ * 
+ * and-query := unary { AND unary | NOT unary }
+ * 
+ * unary := NOT unary | near
+ * 
+ * near := primary { NEAR/k primary }
+ * 
+ * primary := ( query ) | " word { word } " | word | pattern | word~[k]
+ * 
+ * Operators must be written in upper case; in lower case they are words. A
+ * pattern is a word with one or more *, each standing for any sequence of
+ * characters (see WildcardQuery). A word followed by ~k stands for the words
+ * at edit distance at most k from it (see FuzzyQuery); ~ alone is ~2.
+ * Patterns and fuzzy words cannot be used in phrases. A
+ * phrase in quotes is satisfied by the documents that contain its words one
+ * after the other. NEAR/k is satisfied by the documents where its operands,
+ * which must be words or phrases, occur with at most k - 1 words between them;
+ * NEAR alone is NEAR/5.
+ * Words separated only by spaces are joined by OR, so that a list of words
+ * finds the documents that contain at least one of them, as in previous
+ * versions of the system; a NOT after an operand is joined to it by AND (a NOT
+ * b is the same as a AND NOT b).
+ * 
+ * @author Joel Torres
+ *
+ */
+public class QueryParser {
+	private static final int DEFAULTDISTANCE = 5; // k of NEAR
+	private ArrayList<String> tokens;
+	private int next; // index of next token
+
+	/**
+	 * Parses the text of a query.
+	 * 
+	 * @param text
+	 *            the text
+	 * @return the query
+	 * @throws IllegalArgumentException
+	 *             if the text is not a valid query
+	 */
+	public static Query parse(String text) throws IllegalArgumentException {
+		QueryParser parser = new QueryParser(text);
+		if (parser.tokens.isEmpty())
+			throw new IllegalArgumentException("Empty query.");
+		Query query = parser.parseQuery();
+		if (parser.next < parser.tokens.size())
+			throw new IllegalArgumentException("Unexpected " + parser.tokens.get(parser.next) + " in query.");
+		return query;
+	}
+
+	/**
+	 * Creates a parser for the given text, splitting it in tokens.
+	 * 
+	 * @param text
+	 *            the text
+	 */
+	private QueryParser(String text) {
+		tokens = new ArrayList<>();
+		StringBuilder token = new StringBuilder();
+		for (int i = 0; i < text.length(); i++) {
+			char ch = text.charAt(i);
+			if (Character.isWhitespace(ch) || ch == '(' || ch == ')' || ch == '"') {
+				if (token.length() > 0) {
+					tokens.add(token.toString());
+					token.setLength(0);
+				}
+				if (!Character.isWhitespace(ch))
+					tokens.add(String.valueOf(ch));
+			} else
+				token.append(ch);
+		}
+		if (token.length() > 0)
+			tokens.add(token.toString());
+		next = 0;
+	}
+
+	/**
+	 * Determines if the next token is the given one.
+	 * 
+	 * @param token
+	 *            the token
+	 * @return true if it is, false otherwise
+	 */
+	private boolean nextIs(String token) {
+		return next < tokens.size() && tokens.get(next).equals(token);
+	}
+
+	/**
+	 * Parses: query := and-query { [OR] and-query }
+	 * 
+	 * @return the query
+	 * @throws IllegalArgumentException
+	 *             if the text is not a valid query
+	 */
+	private Query parseQuery() throws IllegalArgumentException {
+		ArrayList<Query> operands = new ArrayList<>();
+		operands.add(parseAndQuery());
+		while (next < tokens.size() && !nextIs(")")) {
+			if (nextIs("OR"))
+				next++;
+			operands.add(parseAndQuery());
+		}
+		return operands.size() == 1 ? operands.get(0) : new OrQuery(operands);
+	}
+
+	/**
+	 * Parses: and-query := unary { AND unary | NOT unary }
+	 * 
+	 * @return the query
+	 * @throws IllegalArgumentException
+	 *             if the text is not a valid query
+	 */
+	private Query parseAndQuery() throws IllegalArgumentException {
+		ArrayList<Query> operands = new ArrayList<>();
+		operands.add(parseUnary());
+		while (nextIs("AND") || nextIs("NOT")) {
+			if (nextIs("AND"))
+				next++;
+			operands.add(parseUnary()); // a NOT is parsed as part of unary
+		}
+		return operands.size() == 1 ? operands.get(0) : new AndQuery(operands);
+	}
+
+	/**
+	 * Parses: unary := NOT unary | near
+	 * 
+	 * @return the query
+	 * @throws IllegalArgumentException
+	 *             if the text is not a valid query
+	 */
+	private Query parseUnary() throws IllegalArgumentException {
+		if (nextIs("NOT")) {
+			next++;
+			return new NotQuery(parseUnary());
+		}
+		return parseNear();
+	}
+
+	/**
+	 * Parses: near := primary { NEAR/k primary }
+	 * 
+	 * @return the query
+	 * @throws IllegalArgumentException
+	 *             if the text is not a valid query
+	 */
+	private Query parseNear() throws IllegalArgumentException {
+		Query query = parsePrimary();
+		while (next < tokens.size() && isNear(tokens.get(next))) {
+			int distance = nearDistance(tokens.get(next++));
+			Query other = parsePrimary();
+			if (!(query instanceof PositionalQuery) || !(other instanceof PositionalQuery))
+				throw new IllegalArgumentException("Operands of NEAR must be words or phrases.");
+			query = new NearQuery((PositionalQuery) query, (PositionalQuery) other, distance);
+		}
+		return query;
+	}
+
+	/**
+	 * Determines if a token is a NEAR operator.
+	 * 
+	 * @param token
+	 *            the token
+	 * @return true if it is, false otherwise
+	 */
+	private static boolean isNear(String token) {
+		return token.equals("NEAR") || token.startsWith("NEAR/");
+	}
+
+	/**
+	 * Gets the distance of a NEAR operator.
+	 * 
+	 * @param token
+	 *            the operator: NEAR or NEAR/k
+	 * @return k
+	 * @throws IllegalArgumentException
+	 *             if k is not a positive integer
+	 */
+	private static int nearDistance(String token) throws IllegalArgumentException {
+		if (token.equals("NEAR"))
+			return DEFAULTDISTANCE;
+		try {
+			int distance = Integer.parseInt(token.substring(5));
+			if (distance > 0)
+				return distance;
+		} catch (NumberFormatException e) {
+		}
+		throw new IllegalArgumentException("Invalid distance in " + token + ".");
+	}
+
+	/**
+	 * Parses: primary := ( query ) | " word { word } " | word | pattern |
+	 * word~[k]
+	 * 
+	 * @return the query
+	 * @throws IllegalArgumentException
+	 *             if the text is not a valid query
+	 */
+	private Query parsePrimary() throws IllegalArgumentException {
+		if (next == tokens.size())
+			throw new IllegalArgumentException("Incomplete query.");
+		String token = tokens.get(next++);
+		if (token.equals("\"")) {
+			ArrayList<WordQuery> words = new ArrayList<>();
+			while (next < tokens.size() && !nextIs("\"")) {
+				if (isPattern(tokens.get(next)) || isFuzzy(tokens.get(next)))
+					throw new IllegalArgumentException("Patterns and fuzzy words cannot be used in phrases.");
+				words.add(new WordQuery(tokens.get(next++)));
+			}
+			if (!nextIs("\""))
+				throw new IllegalArgumentException("Missing \" in query.");
+			next++;
+			if (words.isEmpty())
+				throw new IllegalArgumentException("Empty phrase in query.");
+			return words.size() == 1 ? words.get(0) : new PhraseQuery(words);
+		}
+		if (token.equals("(")) {
+			Query query = parseQuery();
+			if (!nextIs(")"))
+				throw new IllegalArgumentException("Missing ) in query.");
+			next++;
+			return query;
+		}
+		if (token.equals(")") || token.equals("AND") || token.equals("OR") || token.equals("NOT") || isNear(token))
+			throw new IllegalArgumentException("Unexpected " + token + " in query.");
+		if (isFuzzy(token))
+			return parseFuzzy(token);
+		if (isPattern(token))
+			return new WildcardQuery(token);
+		return new WordQuery(token);
+	}
+
+	/**
+	 * Determines if a token is a fuzzy word.
+	 * 
+	 * @param token
+	 *            the token
+	 * @return true if it has a ~, false otherwise
+	 */
+	private static boolean isFuzzy(String token) {
+		return token.indexOf('~') != -1;
+	}
+
+	/**
+	 * Parses a fuzzy word: word~k or word~.
+	 * 
+	 * @param token
+	 *            the token
+	 * @return the query
+	 * @throws IllegalArgumentException
+	 *             if the word is empty or a pattern, or if k is not an integer
+	 *             from 1 to FuzzyQuery.MAXDISTANCE
+	 */
+	private static Query parseFuzzy(String token) throws IllegalArgumentException {
+		int tilde = token.indexOf('~');
+		String word = token.substring(0, tilde);
+		if (word.isEmpty() || isPattern(word))
+			throw new IllegalArgumentException("Invalid fuzzy word " + token + ".");
+		String distance = token.substring(tilde + 1);
+		if (distance.isEmpty())
+			return new FuzzyQuery(word, FuzzyQuery.MAXDISTANCE);
+		try {
+			int maxDistance = Integer.parseInt(distance);
+			if (maxDistance > 0 && maxDistance <= FuzzyQuery.MAXDISTANCE)
+				return new FuzzyQuery(word, maxDistance);
+		} catch (NumberFormatException e) {
+		}
+		throw new IllegalArgumentException(
+				"Invalid distance in " + token + "; it must be from 1 to " + FuzzyQuery.MAXDISTANCE + ".");
+	}
+
+	/**
+	 * Determines if a token is a wildcard pattern.
+	 * 
+	 * @param token
+	 *            the token
+	 * @return true if it has a *, false otherwise
+	 */
+	private static boolean isPattern(String token) {
+		return token.indexOf('*') != -1;
+	}
+}
@@ -0,0 +1,89 @@
+package queryClasses;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import generalClasses.IntList;
+
+/**
+ * Query satisfied by the documents that contain a word that matches a
+ * pattern, where each * stands for any sequence of characters: comput* for the
+ * words that begin with comput, *ing for those that end with ing, etc. Before
+ * the words of the query are collected, the pattern is replaced by the words
+ * of the index that match it (see rewrite()); if they are more than
+ * MAXEXPANSIONS, the query is rejected.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class WildcardQuery extends Query {
+	public static final int MAXEXPANSIONS = 64;
+	private String pattern; // in lower case
+
+	/**
+	 * Creates the query of a pattern.
+	 * 
+	 * @param pattern
+	 *            the pattern, with at least one *; it is treated as in lower
+	 *            case
+	 */
+	public WildcardQuery(String pattern) {
+		this.pattern = pattern.toLowerCase();
+	}
+
+	/**
+	 * Finds the words of the index that match the pattern.
+	 * 
+	 * @param context
+	 *            gives access to the main index
+	 * @return the words, in increasing order
+	 * @throws IllegalArgumentException
+	 *             if more than MAXEXPANSIONS words match
+	 */
+	private ArrayList<String> expand(QueryContext context) throws IllegalArgumentException {
+		ArrayList<String> words = context.getMatchingWords(pattern, MAXEXPANSIONS);
+		if (words.size() > MAXEXPANSIONS)
+			throw new IllegalArgumentException(
+					"Pattern " + pattern + " matches more than " + MAXEXPANSIONS + " words.");
+		return words;
+	}
+
+	/**
+	 * Evaluated as the union of the lists of the words that match.
+	 */
+	public IntList evaluate(QueryContext context) throws IOException {
+		IntList docIDs = new IntList();
+		for (String word : expand(context))
+			docIDs = DocIDLists.union(docIDs, new WordQuery(word).evaluate(context));
+		return docIDs;
+	}
+
+	/**
+	 * Rewritten as the word that matches the pattern, or as the OR of the words
+	 * that match it; if no word matches, the query is not rewritten.
+	 */
+	public Query rewrite(QueryContext context) throws IllegalArgumentException {
+		ArrayList<Query> words = new ArrayList<>();
+		for (String word : expand(context))
+			words.add(new WordQuery(word));
+		if (words.isEmpty())
+			return this;
+		return words.size() == 1 ? words.get(0) : new OrQuery(words);
+	}
+
+	/**
+	 * Adds no word, since the words are not known until the query is
+	 * rewritten.
+	 */
+	public void collectWords(ArrayList<String> words) {
+	}
+
+	/**
+	 * Canonical text of the query: the pattern in lower case.
+	 * 
+	 * @return the text
+	 */
+	public String toString() {
+		return pattern;
+	}
+}
@@ -0,0 +1,104 @@
+package queryClasses;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Map;
+
+import dataManagement.DocumentIDX;
+import dataManagement.PostingList;
+import generalClasses.IntList;
+
+/**
+ * Query satisfied by the documents that contain a word.
+ * 
+ * @author Joel Torres
+ *
+ */
+public class WordQuery extends Query implements PositionalQuery {
+	private String word; // in lower case
+	private double weight; // in the rank of a document
+
+	/**
+	 * Creates the query of a word.
+	 * 
+	 * @param word
+	 *            the word; it is treated as in lower case
+	 */
+	public WordQuery(String word) {
+		this(word, 1);
+	}
+
+	/**
+	 * Creates the query of a word with the given weight in the rank of a
+	 * document.
+	 * 
+	 * @param word
+	 *            the word; it is treated as in lower case
+	 * @param weight
+	 *            the weight; 1 for words of the text of the query
+	 */
+	public WordQuery(String word, double weight) {
+		this.word = word.toLowerCase();
+		this.weight = weight;
+	}
+
+	/**
+	 * Getter for the word.
+	 * 
+	 * @return the word, in lower case
+	 */
+	public String getWord() {
+		return word;
+	}
+
+	/**
+	 * Evaluated as the docIDs in the list of pairs of the word.
+	 */
+	public IntList evaluate(QueryContext context) throws IOException {
+		PostingList wordDocsList = context.getDocsList(word);
+		IntList docIDs = new IntList(wordDocsList.size());
+		for (int i = 0; i < wordDocsList.size(); i++)
+			docIDs.add(wordDocsList.getDocID(i));
+		return docIDs;
+	}
+
+	/**
+	 * The positions of the word are its ordinals in the document.
+	 */
+	public IntList positions(DocumentIDX docIDX) {
+		return docIDX.getWordOrdinals(word);
+	}
+
+	/**
+	 * A word has length 1.
+	 * 
+	 * @return 1
+	 */
+	public int length() {
+		return 1;
+	}
+
+	/**
+	 * Adds the word, if not in the list.
+	 */
+	public void collectWords(ArrayList<String> words) {
+		if (!words.contains(word))
+			words.add(word);
+	}
+
+	/**
+	 * Adds the word with its weight.
+	 */
+	public void collectWeights(Map<String, Double> weights) {
+		weights.merge(word, weight, Math::max);
+	}
+
+	/**
+	 * Canonical text of the query: the word in lower case.
+	 * 
+	 * @return the text
+	 */
+	public String toString() {
+		return word;
+	}
+}
@@ -0,0 +1,190 @@
+package systemClasses;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.RecursiveTask;
+
+import dataManagement.DocumentMetadata;
+import dataManagement.PostingList;
+import generalClasses.IntList;
+
+/**
+ * Fork-join task that indexes a range of documents that have already been
+ * assigned an ID. Each document is tokenized and its idx file is written; the
+ * result is the map of pairs (docID, f) of every word in the range, ready to be
+ * registered in the main index in one pass. Ranges are split in halves until
+ * they have no more than DOCSPERTASK documents.
+ *
+ * @author Joel Torres
+ *
+ */
+public class BulkIndexingTask extends RecursiveTask<BulkIndexingTask.IndexedPostings> {
+	private static final long serialVersionUID = 1L;
+	private static final int DOCSPERTASK = 4;
+
+	private ArrayList<Integer> docIDs;
+	private ArrayList<File> docFilePaths;
+	private int from, to; // range of documents in lists: [from, to)
+
+	/**
+	 * Creates a task to index the documents in positions from to to - 1 of the
+	 * given lists.
+	 *
+	 * @param docIDs
+	 *            ids assigned to the documents
+	 * @param docFilePaths
+	 *            files of the documents; same order as docIDs
+	 * @param from
+	 *            first position in range
+	 * @param to
+	 *            position after the last one in range
+	 */
+	public BulkIndexingTask(ArrayList<Integer> docIDs, ArrayList<File> docFilePaths, int from, int to) {
+		this.docIDs = docIDs;
+		this.docFilePaths = docFilePaths;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	/**
+	 * Indexes the documents in range, splitting it if needed.
+	 *
+	 * @return the postings of the documents in range
+	 */
+	protected IndexedPostings compute() {
+		if (to - from <= DOCSPERTASK) {
+			IndexedPostings result = new IndexedPostings();
+			for (int i = from; i < to; i++)
+				indexDocument(docIDs.get(i), docFilePaths.get(i), result);
+			return result;
+		}
+
+		int middle = (from + to) / 2;
+		BulkIndexingTask left = new BulkIndexingTask(docIDs, docFilePaths, from, middle);
+		BulkIndexingTask right = new BulkIndexingTask(docIDs, docFilePaths, middle, to);
+		left.fork();
+		IndexedPostings rightResult = right.compute();
+		IndexedPostings leftResult = left.join();
+		leftResult.merge(rightResult); // keeps docIDs in increasing order
+		return leftResult;
+	}
+
+	/**
+	 * Tokenizes one document, writes its idx file and adds its pairs (docID,
+	 * f) and its metadata to the given result.
+	 *
+	 * @param docID
+	 *            id of the document
+	 * @param docFilePath
+	 *            file of the document
+	 * @param result
+	 *            where the postings of the document are added
+	 */
+	private void indexDocument(int docID, File docFilePath, IndexedPostings result) {
+		Map<String, IntList> documentWordsMap = new HashMap<>();
+		DocumentMetadata metadata;
+		try {
+			metadata = DocumentMetadata.read(docFilePath); // before reading it
+			RandomAccessFile docFile = new RandomAccessFile(docFilePath, "r");
+			SystemController.fillMapFromDocumentText(documentWordsMap, docFile);
+			docFile.close();
+			int numberOfWords = 0;
+			for (IntList locations : documentWordsMap.values())
+				numberOfWords += locations.size();
+			metadata = metadata.withNumberOfWords(numberOfWords);
+			SystemController.saveMapToIDXFile(docID, documentWordsMap);
+		} catch (IOException | IllegalArgumentException e) {
+			result.failedDocIDs.add(docID);
+			return;
+		}
+
+		for (Entry<String, IntList> e : documentWordsMap.entrySet())
+			result.add(e.getKey(), docID, e.getValue().size());
+		result.metadata.put(docID, metadata);
+	}
+
+	/**
+	 * Result of a BulkIndexingTask: the pairs (docID, f) of every word in the
+	 * documents indexed, the metadata of each document indexed, and the ids
+	 * of the documents that could not be indexed.
+	 *
+	 * @author Joel Torres
+	 *
+	 */
+	public static class IndexedPostings {
+		private Map<String, PostingList> postings = new HashMap<>();
+		private Map<Integer, DocumentMetadata> metadata = new HashMap<>();
+		private ArrayList<Integer> failedDocIDs = new ArrayList<>();
+
+		/**
+		 * Adds pair (docID, frequency) to the list of pairs of word.
+		 *
+		 * @param word
+		 *            the word
+		 * @param docID
+		 *            the id of the document
+		 * @param frequency
+		 *            frequency of word in document
+		 */
+		private void add(String word, int docID, int frequency) {
+			PostingList wordDocsList = postings.get(word);
+			if (wordDocsList == null) {
+				wordDocsList = new PostingList();
+				postings.put(word, wordDocsList);
+			}
+			wordDocsList.add(docID, frequency);
+		}
+
+		/**
+		 * Appends the content of other to this result.
+		 *
+		 * @param other
+		 *            result of documents that go after the ones in this
+		 */
+		private void merge(IndexedPostings other) {
+			for (Entry<String, PostingList> e : other.postings.entrySet()) {
+				PostingList wordDocsList = postings.get(e.getKey());
+				if (wordDocsList == null)
+					postings.put(e.getKey(), e.getValue());
+				else
+					wordDocsList.addAll(e.getValue());
+			}
+			metadata.putAll(other.metadata);
+			failedDocIDs.addAll(other.failedDocIDs);
+		}
+
+		/**
+		 * Getter for the pairs (docID, f) of every word indexed.
+		 *
+		 * @return map whose entries are (word, list of pairs (docID, f))
+		 */
+		public Map<String, PostingList> getPostings() {
+			return postings;
+		}
+
+		/**
+		 * Getter for the metadata of each document indexed; their generation
+		 * is not known yet.
+		 *
+		 * @return map whose entries are (docID, metadata)
+		 */
+		public Map<Integer, DocumentMetadata> getMetadata() {
+			return metadata;
+		}
+
+		/**
+		 * Getter for the ids of the documents that could not be indexed.
+		 *
+		 * @return list of ids
+		 */
+		public ArrayList<Integer> getFailedDocIDs() {
+			return failedDocIDs;
+		}
+	}
+}
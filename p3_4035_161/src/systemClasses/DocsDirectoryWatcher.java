@@ -0,0 +1,150 @@
+package systemClasses;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import generalClasses.P3Utils;
+import ioManagementClasses.IOComponent;
+
+/**
+ * Keeps the index in sync with the docs directory while the system runs (see
+ * the -watch option of Main). The directory is watched with a WatchService,
+ * so no rescan of the directory is needed to find what changed: the names of
+ * the files created, modified or deleted are collected in a batch until no
+ * event comes for QUIETPERIOD milliseconds, or until the first one in the
+ * batch has waited MAXDELAY, and then the whole batch is passed to the
+ * SystemController (see SystemController.synchronizeDocuments()). So a burst
+ * of events, such as the many modifications made while a file is copied, ends
+ * in a single addition or refresh. Events that come while a batch is being
+ * indexed wait in the WatchService, and make the next batch.
+ * 
+ * When started, the whole directory is synchronized once, since files may
+ * have changed while the system was not running; the same is done if the
+ * WatchService loses events (an OVERFLOW event).
+ * 
+ * @author Joel Torres
+ *
+ */
+public class DocsDirectoryWatcher implements Runnable {
+	private static final long QUIETPERIOD = 500; // ms without events that
+													// ends a batch
+	private static final long MAXDELAY = 5000; // ms the first event of a batch
+												// may wait
+	private SystemController sc;
+	private WatchService watchService;
+	private Thread thread;
+
+	/**
+	 * Creates a watcher of the docs directory, which does nothing until
+	 * started.
+	 * 
+	 * @param sc
+	 *            the controller that receives the changes
+	 * @throws IOException
+	 *             if the docs directory cannot be watched
+	 */
+	public DocsDirectoryWatcher(SystemController sc) throws IOException {
+		this.sc = sc;
+		watchService = FileSystems.getDefault().newWatchService();
+		try {
+			P3Utils.DocsDirectoryPath.toPath().register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+		} catch (IOException e) {
+			watchService.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts watching, in a daemon thread.
+	 */
+	public void start() {
+		thread = new Thread(this, "DocsDirectoryWatcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops watching. A batch being indexed is finished first.
+	 */
+	public void stop() {
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		if (thread != null)
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+	}
+
+	/**
+	 * Collects the events of the docs directory in batches and passes them to
+	 * the controller, until stopped. A batch that fails is reported, and the
+	 * watching goes on.
+	 */
+	@Override
+	public void run() {
+		synchronize(null);
+		try {
+			while (true) {
+				WatchKey key = watchService.take();
+				Set<String> docNames = new LinkedHashSet<>();
+				boolean overflow = false;
+				long deadline = System.currentTimeMillis() + MAXDELAY;
+				while (key != null) {
+					for (WatchEvent<?> event : key.pollEvents())
+						if (event.kind() == OVERFLOW)
+							overflow = true;
+						else
+							docNames.add(((Path) event.context()).toString());
+					if (!key.reset()) { // docs directory no longer exists
+						synchronize(docNames);
+						return;
+					}
+					long wait = Math.min(QUIETPERIOD, deadline - System.currentTimeMillis());
+					key = wait > 0 ? watchService.poll(wait, TimeUnit.MILLISECONDS) : null;
+				}
+				synchronize(overflow ? null : docNames);
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// stopped
+		}
+	}
+
+	/**
+	 * Passes a batch to the controller and shows the result, if anything
+	 * changed. If the batch fails, the failure is shown instead; the files of
+	 * the batch are synchronized again with the next event about them, or
+	 * when the system starts again.
+	 * 
+	 * @param docNames
+	 *            names of the files of the batch; null for all of them
+	 */
+	private void synchronize(Set<String> docNames) {
+		String statusMSG;
+		try {
+			statusMSG = sc.synchronizeDocuments(docNames);
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+			statusMSG = "Docs directory could not be synchronized: " + e;
+		}
+		if (statusMSG != null)
+			IOComponent.getComponent().output("\n" + statusMSG + "\n");
+	}
+}
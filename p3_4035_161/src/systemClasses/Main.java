@@ -15,14 +15,27 @@ public class Main {
 	 * object and executing run and close method for loading and saving info.
 	 * 
 	 * @param args
-	 *            String array with execution inputs (if any)
+	 *            String array with execution inputs (if any); -bm25 selects
+	 *            BM25 to rank the documents that match a search, and -watch
+	 *            keeps the index in sync with the docs directory while the
+	 *            system runs (see DocsDirectoryWatcher)
 	 * @throws IOException
 	 *             may throw this exception if an Input/Output error occurs
 	 *             while accessing the corresponding directory.
 	 */
 	public static void main(String[] args) throws IOException {
 		SystemController sc = SystemController.getInstance();
+		DocsDirectoryWatcher watcher = null;
+		for (String arg : args)
+			if (arg.equals("-bm25"))
+				sc.setBM25Ranking(true);
+			else if (arg.equals("-watch") && watcher == null) {
+				watcher = new DocsDirectoryWatcher(sc);
+				watcher.start();
+			}
 		sc.run(); // initiates the execution of system controller
+		if (watcher != null)
+			watcher.stop();
 		sc.close(); // saves modified index data
 	}
 }
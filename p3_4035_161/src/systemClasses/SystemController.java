@@ -3,32 +3,86 @@ package systemClasses;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.Set;
 import java.util.Stack;
+import java.util.concurrent.ForkJoinPool;
 
 import dataManagement.DocsIDManager;
+import dataManagement.DocsStatsManager;
 import dataManagement.Document;
+import dataManagement.DocumentIDX;
+import dataManagement.DocumentIDXCache;
+import dataManagement.DocumentMetadata;
+import dataManagement.IndexLog;
 import dataManagement.MainIndexManager;
 import dataManagement.MatchingSearchDocument;
+import dataManagement.PostingList;
+import dataManagement.QueryResultCache;
 import dataManagement.WordInDocument;
+import generalClasses.EntryComparator;
+import generalClasses.IntList;
 import generalClasses.P3Utils;
 import menuClasses.MainMenu;
 import menuClasses.Menu;
 import menuClasses.Option;
+import queryClasses.Query;
+import queryClasses.QueryContext;
+import queryClasses.QueryParser;
 
 /**
  * Main class of the system. It controls fundamental operations of the system.
  * 
+ * Searches may run in many threads at the same time, and while documents are
+ * added or removed: each search reads one snapshot of the main index (see
+ * IndexSnapshot) and takes no lock. Additions and removals are done one at a
+ * time, and a document becomes visible to searches, or disappears, all at
+ * once, when the main index publishes its next snapshot.
+ * 
+ * Every addition, removal or refresh is written to the log of the index (see
+ * IndexLog) before it is made, and the files of the index are saved only at
+ * checkpoints: when the log grows beyond MAXLOGSIZE, and when the system is
+ * closed. If the system stops without closing, the changes in the log are
+ * made again when it starts (see recover()).
+ * 
  * @author Joel Torres
  *
  */
 public class SystemController {
+	private static final double BM25K1 = 1.2; // parameters of BM25
+	private static final double BM25B = 0.75;
+	private static final long MAXLOGSIZE = 8 << 20; // checkpoint when reached
+	private static final int UPTODATE = 0, OUTOFDATE = 1, MISSING = 2, NOTINDEXED = 3;
+	private static final String[] STATUSMESSAGES = { "is up to date", "is out of date",
+			"is missing from docs directory", "is not indexed" }; // by status
 	private static SystemController instance = null;
 	private MainIndexManager mim; // manager of main index data
 	private DocsIDManager didm; // manager of documents ids in the system
+	private DocumentIDXCache dic; // cache of idx data loaded by searches
+	private QueryResultCache qrc; // cache of results of recent searches
+	private DocsStatsManager dsm; // numbers of words of documents
+	private IndexLog log; // changes since the last checkpoint
+	private volatile boolean bm25; // rank with BM25 instead of the default
+									// formula
+	private final Object updateLock = new Object(); // additions and removals
 	private Stack<Menu> mStack; // stack to manage actions in menus in this
 								// system
 
@@ -40,7 +94,7 @@ public class SystemController {
 	 * @throws IOException
 	 *             if there are problems with files
 	 */
-	public static SystemController getInstance() throws IOException {
+	public static synchronized SystemController getInstance() throws IOException {
 		if (instance == null)
 			instance = new SystemController();
 
@@ -70,9 +124,198 @@ public class SystemController {
 												// main_index.pp3 file
 		didm = DocsIDManager.getInstance(); // initializes didm with data in
 											// doc_ID.pp3 file
+		dic = DocumentIDXCache.getInstance(); // empty cache of idx data
+		qrc = new QueryResultCache(); // empty cache of search results
+		dsm = DocsStatsManager.getInstance(); // initializes dsm with data in
+												// docs_stats.pp3 file
+		bm25 = false;
+		log = new IndexLog();
+		recover();
+		completeDocsStats();
 		mStack = new Stack<Menu>(); // used to control menu operations
 	}
 
+	/**
+	 * Makes again the changes in the log, which were not saved in the files of
+	 * the index when the system stopped. A document added is registered in
+	 * didm and dsm with its id, and its pairs in mim, unless they are in a
+	 * committed segment already; consecutive additions are registered in mim
+	 * in one pass. A document refreshed gets the idx file written for its new
+	 * content, if it was not renamed yet (see refreshDocument()), and its
+	 * pairs are replaced. Then, files that belong to no document are deleted:
+	 * idx files of documents whose addition was not logged, or whose removal
+	 * was not finished, and temporary files. The ids of the documents are
+	 * then given to mim, for searches. If there were changes, a checkpoint
+	 * saves them.
+	 * 
+	 * @throws IOException
+	 *             if there are problems with files
+	 */
+	private void recover() throws IOException {
+		Map<String, PostingList> postings = new Hashtable<>(); // not yet in mim
+		Map<Integer, Collection<String>> addedWords = new Hashtable<>();
+		int records = log.replay(new IndexLog.Handler() {
+
+			@Override
+			public void added(int generation, int docID, String name, DocumentMetadata metadata,
+					Map<String, Integer> frequencies) {
+				didm.restoreDocument(docID, name);
+				dsm.setMetadata(docID, metadata);
+				if (mim.isCommitted(generation))
+					return;
+				for (Entry<String, Integer> e : frequencies.entrySet()) {
+					PostingList list = postings.get(e.getKey());
+					if (list == null) {
+						list = new PostingList(1);
+						postings.put(e.getKey(), list);
+					}
+					list.add(docID, e.getValue());
+				}
+				addedWords.put(docID, frequencies.keySet());
+			}
+
+			@Override
+			public void updated(int generation, int docID, String name, DocumentMetadata metadata,
+					Map<String, Integer> frequencies) {
+				File pendingPath = new File(P3Utils.IndexDirectoryPath, makePendingIDXName(docID, metadata.getHash()));
+				if (pendingPath.exists())
+					try {
+						P3Utils.replaceFile(pendingPath, new File(P3Utils.IndexDirectoryPath, makeIDXName(docID)));
+					} catch (IOException e) {
+						e.printStackTrace(); // the idx file does not match
+					}
+				if (!mim.isCommitted(generation)) {
+					if (!postings.isEmpty()) { // pairs of the document may be there
+						mim.registerPostings(new Hashtable<>(postings));
+						postings.clear();
+					}
+					// if the words are unknown, every list of the mim object
+					// is looked at
+					mim.removePairs(Collections.singletonMap(docID, addedWords.remove(docID)));
+				}
+				added(generation, docID, name, metadata, frequencies);
+			}
+
+			@Override
+			public void removed(int generation, IntList docIDs) {
+				boolean committed = mim.isCommitted(generation);
+				Map<Integer, Collection<String>> documents = new HashMap<>();
+				for (int i = 0; i < docIDs.size(); i++) {
+					int docID = docIDs.get(i);
+					try {
+						didm.removeDocID(docID);
+					} catch (IllegalArgumentException e) {
+						// not in the list saved; nothing to remove
+					}
+					didm.releaseDocID(docID);
+					dsm.removeDocID(docID);
+					Collection<String> words = addedWords.remove(docID);
+					if (words == null && !committed)
+						try {
+							words = DocumentIDX.readWords(docID);
+						} catch (IOException | IllegalArgumentException e) {
+							// every list of the mim object is looked at
+						}
+					documents.put(docID, words);
+				}
+				if (committed)
+					return;
+				if (!postings.isEmpty()) { // additions before this removal
+					mim.registerPostings(new Hashtable<>(postings));
+					postings.clear();
+				}
+				mim.removePairs(documents);
+			}
+		});
+		if (!postings.isEmpty())
+			mim.registerPostings(postings);
+
+		String[] fNames = P3Utils.IndexDirectoryPath.list();
+		if (fNames != null)
+			for (String fName : fNames)
+				if (fName.startsWith("idx_") && fName.endsWith(".pp3")) {
+					int docID;
+					try {
+						docID = Integer.parseInt(fName.substring(4, fName.indexOf('.')));
+					} catch (NumberFormatException | StringIndexOutOfBoundsException e) {
+						continue; // not an idx file
+					}
+					if (!didm.hasDocument(docID))
+						new File(P3Utils.IndexDirectoryPath, fName).delete();
+				} else if (fName.endsWith(".tmp") && !fName.startsWith("segment_") || fName.endsWith(".new"))
+					new File(P3Utils.IndexDirectoryPath, fName).delete();
+		Set<Integer> absentDocIDs = new HashSet<>();
+		for (int docID = 1; docID <= didm.getNumberOfDocIDs(); docID++)
+			if (!didm.hasDocument(docID)) {
+				dsm.removeDocID(docID);
+				absentDocIDs.add(docID);
+			}
+		mim.setDocIDs(didm.getNumberOfDocIDs(), absentDocIDs);
+
+		if (records > 0)
+			checkpoint();
+	}
+
+	/**
+	 * Saves the changes made since the last checkpoint in the files of the
+	 * index (a commit of mim, and the files of didm and dsm), and then
+	 * empties the log. Must be called with the lock of additions and removals
+	 * held, or before the system runs.
+	 * 
+	 * @throws IOException
+	 *             if there are problems with files; the log is kept, and the
+	 *             changes are made again from it if the system stops
+	 */
+	private void checkpoint() throws IOException {
+		mim.commit();
+		didm.save();
+		dsm.save();
+		log.reset();
+	}
+
+	/**
+	 * Makes a checkpoint if the log has grown beyond MAXLOGSIZE. Must be
+	 * called with the lock of additions and removals held.
+	 */
+	private void checkpointIfNeeded() {
+		try {
+			if (log.size() >= MAXLOGSIZE)
+				checkpoint();
+		} catch (IOException e) {
+			e.printStackTrace(); // changes remain in the log...
+		}
+	}
+
+	/**
+	 * Registers in dsm the number of words of the indexed documents that have
+	 * none, which is the case of documents indexed by previous versions of the
+	 * system. The numbers are read from their idx files.
+	 * 
+	 * @throws IOException
+	 *             if there are problems with files
+	 */
+	private void completeDocsStats() throws IOException {
+		for (int docID = 1; docID <= didm.getNumberOfDocIDs(); docID++)
+			if (didm.hasDocument(docID) && dsm.getNumberOfWords(docID) == -1)
+				try {
+					dsm.setNumberOfWords(docID, DocumentIDX.readNumberOfWords(docID));
+				} catch (IllegalArgumentException e) {
+					// no idx file; the document is not ranked
+				}
+	}
+
+	/**
+	 * Selects the function used to rank the documents that match a search:
+	 * BM25, or the default one (see rankMatchingDocuments).
+	 * 
+	 * @param bm25
+	 *            true to rank with BM25, false for the default function
+	 */
+	public void setBM25Ranking(boolean bm25) {
+		this.bm25 = bm25;
+		qrc.invalidate();
+	}
+
 	/**
 	 * Returns reference to the stack object used to manage different states of
 	 * the system.
@@ -97,6 +340,23 @@ public class SystemController {
 	 *             If there are problems with files
 	 */
 	public String addNewDocument(String docName) throws IOException {
+		synchronized (updateLock) {
+			return addNewDocumentLocked(docName);
+		}
+	}
+
+	/**
+	 * Adds a new document to the system (see addNewDocument()), with the lock
+	 * of additions and removals held.
+	 * 
+	 * @param docName
+	 *            name of the file containing the text of the document to add
+	 * @return Returns a string message summarizing the final result or status
+	 *         of the operation.
+	 * @throws IOException
+	 *             If there are problems with files
+	 */
+	private String addNewDocumentLocked(String docName) throws IOException {
 
 		File docFilePath; // the path for the document's file
 
@@ -124,8 +384,19 @@ public class SystemController {
 		if (docID == -1)
 			return "Document " + docName + " already exists in index.";
 
+		// The size, time of last modification and hash of the file are taken
+		// before it is read, so that a change made while it is read makes it
+		// out of date.
+		DocumentMetadata metadata;
+		try {
+			metadata = DocumentMetadata.read(docFilePath);
+		} catch (IOException e) {
+			didm.removeDocID(docID);
+			didm.releaseDocID(docID); // never seen by searches
+			throw e;
+		}
 		RandomAccessFile docFile = new RandomAccessFile(docFilePath, "r");
-		Map<String, ArrayList<Integer>> documentWordsMap = new Hashtable<>();
+		Map<String, IntList> documentWordsMap = new Hashtable<>();
 
 		// Creates the map where entries are pairs (word, list of locations),
 		// where the list of locations contains the integer values of indexes
@@ -134,22 +405,179 @@ public class SystemController {
 		fillMapFromDocumentText(documentWordsMap, docFile);
 		docFile.close();
 
-		// Registers the document's words in the mim object. For each such
-		// word, it registers pair (docID, f), where docID is the document ID
-		// assigned to the new document, and f = size of list of its locations
-		// in the document (the frequency of the word in the document).
-		registerDataInMIM(docID, documentWordsMap);
-
 		// Create the IDX file corresponding to the content of the new document
 		// being added to the system. For each word in the document, it writes
 		// the word, followed by the list of locations of that word in the
-		// document. See description of idx file in project's specs.
+		// document. See description of idx file in project's specs. It is
+		// written first, since searches may read it as soon as the document
+		// is in the mim object.
 		saveMapToIDXFile(docID, documentWordsMap);
+		int numberOfWords = 0;
+		for (IntList locations : documentWordsMap.values())
+			numberOfWords += locations.size();
+		metadata = metadata.withNumberOfWords(numberOfWords);
+		dic.invalidate(docID); // in case the id belonged to a removed document
+
+		// Registers the document's words in the mim object. For each such
+		// word, it registers pair (docID, f), where docID is the document ID
+		// assigned to the new document, and f = size of list of its locations
+		// in the document (the frequency of the word in the document). The
+		// addition is written to the log first.
+		try {
+			registerDataInMIM(docID, docName, metadata, documentWordsMap);
+		} catch (IOException e) {
+			didm.removeDocID(docID);
+			didm.releaseDocID(docID); // never seen by searches
+			dsm.removeDocID(docID);
+			new File(P3Utils.IndexDirectoryPath, makeIDXName(docID)).delete();
+			return "Document " + docName + " could not be added: " + e.getMessage();
+		}
+		qrc.invalidate();
+		checkpointIfNeeded();
 		return "Document " + docName + " was successfully added."; // things
 																	// worked
 																	// fine
 	}
 
+	/**
+	 * To be executed whenever the user initiates an action of adding all the
+	 * documents in the docs directory to the system.
+	 * 
+	 * Every document not yet in the index is assigned an ID, then all of them
+	 * are tokenized and their idx files are written in parallel (see
+	 * BulkIndexingTask). Finally, the pairs (docID, f) of all the new documents
+	 * are registered in the mim object in one single pass.
+	 * 
+	 * @return Returns a string message summarizing the final result or status
+	 *         of the operation.
+	 */
+	public String addAllDocuments() {
+		synchronized (updateLock) {
+			return addAllDocumentsLocked();
+		}
+	}
+
+	/**
+	 * Adds all the documents in the docs directory to the system (see
+	 * addAllDocuments()), with the lock of additions and removals held.
+	 * 
+	 * @return Returns a string message summarizing the final result or status
+	 *         of the operation.
+	 */
+	private String addAllDocumentsLocked() {
+		String[] docNames = P3Utils.DocsDirectoryPath.list();
+		if (docNames == null)
+			return "Docs directory not found: " + P3Utils.DocsDirectoryPath.getAbsolutePath();
+		Arrays.sort(docNames); // ids assigned in order of names
+
+		ArrayList<Integer> docIDs = new ArrayList<>();
+		ArrayList<File> docFilePaths = new ArrayList<>();
+		int skipped = 0; // already indexed or invalid names
+		for (String docName : docNames) {
+			try {
+				File docFilePath = P3Utils.validateDocumentFile(docName);
+				int docID = didm.addDocument(docName);
+				if (docID == -1)
+					skipped++;
+				else {
+					docIDs.add(docID);
+					docFilePaths.add(docFilePath);
+				}
+			} catch (IllegalArgumentException e) {
+				skipped++;
+			}
+		}
+
+		BulkIndexingTask.IndexedPostings result;
+		try {
+			result = indexNewDocuments(docIDs, docFilePaths);
+		} catch (IOException e) {
+			return "Documents could not be added: " + e.getMessage();
+		}
+		checkpointIfNeeded();
+
+		int added = docIDs.size() - result.getFailedDocIDs().size();
+		return added + " documents were successfully added. " + skipped + " were already in index or have invalid names. "
+				+ result.getFailedDocIDs().size() + " could not be read.";
+	}
+
+	/**
+	 * Indexes new documents, which have already been assigned an ID, in
+	 * parallel (see BulkIndexingTask), and registers their pairs in the mim
+	 * object in one pass. Must be called with the lock of additions and
+	 * removals held.
+	 * 
+	 * @param docIDs
+	 *            ids assigned to the documents
+	 * @param docFilePaths
+	 *            files of the documents; same order as docIDs
+	 * @return the result of the indexing, with the documents that could not
+	 *         be read, which are not kept in the index
+	 * @throws IOException
+	 *             if the additions cannot be written to the log; then none of
+	 *             the documents is kept
+	 */
+	private BulkIndexingTask.IndexedPostings indexNewDocuments(ArrayList<Integer> docIDs,
+			ArrayList<File> docFilePaths) throws IOException {
+		BulkIndexingTask.IndexedPostings result = ForkJoinPool.commonPool()
+				.invoke(new BulkIndexingTask(docIDs, docFilePaths, 0, docIDs.size()));
+
+		// documents that could not be read are not kept in the index
+		for (Integer docID : result.getFailedDocIDs()) {
+			didm.removeDocID(docID);
+			didm.releaseDocID(docID); // never seen by searches
+			new File(P3Utils.IndexDirectoryPath, makeIDXName(docID)).delete();
+		}
+		for (Integer docID : docIDs)
+			dic.invalidate(docID);
+		try {
+			registerPostingsInMIM(result);
+		} catch (IOException e) {
+			for (Integer docID : result.getMetadata().keySet()) {
+				didm.removeDocID(docID);
+				didm.releaseDocID(docID);
+				dsm.removeDocID(docID);
+				new File(P3Utils.IndexDirectoryPath, makeIDXName(docID)).delete();
+			}
+			throw e;
+		}
+		qrc.invalidate();
+		return result;
+	}
+
+	/**
+	 * Registers the pairs of the documents indexed by a BulkIndexingTask in
+	 * mim, in one pass, once the addition of every document is written to the
+	 * log and forced to disk (once for all of them). Their metadata is
+	 * registered in dsm, with the generation where their pairs go.
+	 * 
+	 * @param result
+	 *            the pairs and metadata of the documents
+	 * @throws IOException
+	 *             if the additions cannot be written to the log; then nothing
+	 *             is registered
+	 */
+	private void registerPostingsInMIM(BulkIndexingTask.IndexedPostings result) throws IOException {
+		// the log has the frequencies of the words of each document
+		Map<Integer, Map<String, Integer>> frequencies = new Hashtable<>();
+		for (Integer docID : result.getMetadata().keySet())
+			frequencies.put(docID, new Hashtable<>());
+		for (Entry<String, PostingList> e : result.getPostings().entrySet()) {
+			PostingList list = e.getValue();
+			for (int i = 0; i < list.size(); i++)
+				frequencies.get(list.getDocID(i)).put(e.getKey(), list.getFrequency(i));
+		}
+
+		mim.registerPostings(result.getMetadata().keySet(), result.getPostings(), generation -> {
+			for (Entry<Integer, Map<String, Integer>> e : frequencies.entrySet()) {
+				DocumentMetadata metadata = result.getMetadata().get(e.getKey()).withGeneration(generation);
+				log.logAdded(generation, e.getKey(), didm.getDocName(e.getKey()), metadata, e.getValue());
+				dsm.setMetadata(e.getKey(), metadata);
+			}
+			log.sync();
+		});
+	}
+
 	/**
 	 * To be executed whenever the user initiates an action of removing an
 	 * existing document from the system.
@@ -159,67 +587,536 @@ public class SystemController {
 	 * @return String representation of result (successful or unsuccessful)
 	 */
 	public String removeDocument(String docName) {
+		synchronized (updateLock) {
+			return removeDocumentLocked(docName);
+		}
+	}
 
-		int docID = didm.getDocNamesList().indexOf(docName) + 1; // get id of
-																	// document
-		if (docID == 0)
-			// if 0, doc is not indexed; remove unsuccessful
-			return "Document " + docName + " not indexed."; 
+	/**
+	 * Removes an existing document from the system (see removeDocument()),
+	 * with the lock of additions and removals held.
+	 * 
+	 * @param docName
+	 *            name of document to remove
+	 * @return String representation of result (successful or unsuccessful)
+	 */
+	private String removeDocumentLocked(String docName) {
 
-		String fName = makeIDXName(docID);
-		File idxFilePath = new File(P3Utils.IndexDirectoryPath, fName);
-		idxFilePath.delete();
-		didm.removeDocID(docID);
+		int docID = didm.getDocID(docName); // get id of document
+		if (docID == -1)
+			// if -1, doc is not indexed; remove unsuccessful
+			return "Document " + docName + " not indexed."; 
 
-		mim.removePair(docID); // put 0,0 pairs in mim map where docID matches
+		Map<Integer, ArrayList<String>> documents = new HashMap<>();
+		registerDocumentToRemove(docID, documents);
+		try {
+			removeRegisteredDocuments(documents);
+		} catch (IOException e) {
+			return "Document " + docName + " could not be removed: " + e.getMessage();
+		}
 		return "Document " + docName + " was removed successfully."; 
 	}
 
 	/**
-	 * Compares the time of the last modification of the specified file with the
-	 * last modification of the respective index file (add or remove) and
-	 * determines if file is out of date or up to date.
+	 * Removes many existing documents from the system in one pass: the pairs
+	 * of all of them are removed from the mim object together (see
+	 * MainIndexManager.removePairs()). A name given more than once is counted
+	 * once.
+	 * 
+	 * @param docNames
+	 *            names of the documents to remove
+	 * @return String representation of result (number of documents removed)
+	 */
+	public String removeDocuments(Collection<String> docNames) {
+		synchronized (updateLock) {
+			Map<Integer, ArrayList<String>> documents = new HashMap<>();
+			int notIndexed = 0;
+			for (String docName : new LinkedHashSet<>(docNames)) {
+				int docID = didm.getDocID(docName);
+				if (docID == -1)
+					notIndexed++;
+				else
+					registerDocumentToRemove(docID, documents);
+			}
+			try {
+				removeRegisteredDocuments(documents);
+			} catch (IOException e) {
+				return "Documents could not be removed: " + e.getMessage();
+			}
+			return documents.size() + " documents were removed successfully. " + notIndexed
+					+ " were not indexed.";
+		}
+	}
+
+	/**
+	 * Reads the words of a document to remove from its idx file, so that
+	 * only their lists of pairs are looked at in the mim object.
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @param documents
+	 *            map whose entries are (doc id, words of the document), where
+	 *            the document is added; if its idx file cannot be read, the
+	 *            words registered are null
+	 */
+	private void registerDocumentToRemove(int docID, Map<Integer, ArrayList<String>> documents) {
+		ArrayList<String> words = null;
+		try {
+			words = DocumentIDX.readWords(docID);
+		} catch (IOException | IllegalArgumentException e) {
+			// every list of the mim object is looked at
+		}
+		documents.put(docID, words);
+	}
+
+	/**
+	 * Removes documents from the system, with the lock of additions and
+	 * removals held. The removal is written to the log, and forced to disk.
+	 * Then the documents are removed from the mim object first, so that new
+	 * searches do not find them while their other data is removed.
 	 * 
+	 * @param documents
+	 *            map whose entries are (doc id, words of the document)
+	 * @throws IOException
+	 *             if the removal cannot be written to the log; then nothing is
+	 *             removed
+	 */
+	private void removeRegisteredDocuments(Map<Integer, ArrayList<String>> documents) throws IOException {
+		if (documents.isEmpty())
+			return;
+		// hides the pairs of the documents in mim
+		mim.removePairs(documents, generation -> {
+			log.logRemoved(generation, documents.keySet());
+			log.sync();
+		});
+		for (Integer docID : documents.keySet())
+			didm.removeDocID(docID); // the name can be added again, with a
+										// new id
+		qrc.invalidate();
+
+		// searches that began before may still read the idx files and the
+		// statistics of the documents; their ids are reused once they are
+		// done
+		mim.runWhenUnused(() -> {
+			for (Integer docID : documents.keySet()) {
+				new File(P3Utils.IndexDirectoryPath, makeIDXName(docID)).delete();
+				dsm.removeDocID(docID);
+				dic.invalidate(docID);
+				didm.releaseDocID(docID);
+			}
+		});
+		checkpointIfNeeded();
+	}
+
+	/**
+	 * To be executed whenever the user initiates an action of compacting the
+	 * index. The pairs of removed documents left in the main index are
+	 * discarded (see MainIndexManager.compact()). Searches, additions and
+	 * removals may go on meanwhile.
+	 * 
+	 * @return String representation of result (number of pairs discarded)
+	 */
+	public String compactIndex() {
+		try {
+			int discarded = mim.compact();
+			return "Index compacted: " + discarded + " entries of removed documents were discarded.";
+		} catch (IOException e) {
+			return "Index could not be compacted: " + e.getMessage();
+		}
+	}
+
+	/**
+	 * To be executed whenever the user initiates an action of refreshing the
+	 * indexed documents whose files changed since they were indexed (those
+	 * out of date; see fileStatus()). Each one is indexed again with the same
+	 * id (see refreshDocument()), instead of being removed and added. Missing
+	 * documents are left as they are.
+	 * 
+	 * @return String representation of result (number of documents
+	 *         refreshed)
+	 */
+	public String refreshDocuments() {
+		synchronized (updateLock) {
+			Map<String, BasicFileAttributes> files = listDocsDirectory();
+			ArrayList<String> docNamesList = didm.getDocNamesList();
+			int refreshed = 0, changed = 0, failed = 0;
+			for (int docID = 1; docID <= docNamesList.size(); docID++) {
+				String name = docNamesList.get(docID - 1);
+				BasicFileAttributes attributes = files.get(name);
+				if (name.equals("") || attributes == null || documentStatus(docID, name, attributes) != OUTOFDATE)
+					continue;
+				try {
+					if (refreshDocument(docID, name))
+						changed++;
+					refreshed++;
+				} catch (IOException | IllegalArgumentException e) {
+					failed++;
+				}
+			}
+			checkpointIfNeeded();
+			return refreshed + " documents were refreshed (" + changed + " with changes in their words). " + failed
+					+ " could not be refreshed.";
+		}
+	}
+
+	/**
+	 * Brings the index up to date with the given files of the docs directory,
+	 * which may have been created, modified or deleted (see
+	 * DocsDirectoryWatcher): a file not indexed is added, an indexed document
+	 * whose file no longer exists is removed, and one whose file changed is
+	 * refreshed (see refreshDocument()). All the additions are indexed in
+	 * parallel and registered together, and all the removals are made in one
+	 * pass, as when adding all the documents or removing many of them.
+	 * 
+	 * @param docNames
+	 *            names of the files that may have changed; null for every file
+	 *            in the docs directory and every indexed document
+	 * @return String representation of result (number of documents added,
+	 *         removed and refreshed); null if nothing changed
+	 */
+	public String synchronizeDocuments(Collection<String> docNames) {
+		synchronized (updateLock) {
+			Map<String, BasicFileAttributes> files;
+			if (docNames == null) {
+				files = listDocsDirectory();
+				docNames = new HashSet<>(files.keySet());
+				for (String name : didm.getDocNamesList())
+					if (!name.equals(""))
+						docNames.add(name);
+			} else {
+				files = new HashMap<>();
+				for (String name : docNames)
+					try {
+						BasicFileAttributes attributes = Files.readAttributes(
+								new File(P3Utils.DocsDirectoryPath, name).toPath(), BasicFileAttributes.class);
+						if (attributes.isRegularFile())
+							files.put(name, attributes);
+					} catch (IOException e) {
+						// no such file
+					}
+			}
+
+			ArrayList<String> toAdd = new ArrayList<>();
+			Map<Integer, ArrayList<String>> toRemove = new HashMap<>();
+			int refreshed = 0, failed = 0;
+			for (String name : docNames) {
+				int docID = didm.getDocID(name);
+				BasicFileAttributes attributes = files.get(name);
+				if (docID == -1) {
+					if (attributes != null && P3Utils.validFileName(name))
+						toAdd.add(name);
+				} else if (attributes == null)
+					registerDocumentToRemove(docID, toRemove);
+				else if (documentStatus(docID, name, attributes) == OUTOFDATE)
+					try {
+						refreshDocument(docID, name);
+						refreshed++;
+					} catch (IOException | IllegalArgumentException e) {
+						failed++;
+					}
+			}
+
+			try {
+				removeRegisteredDocuments(toRemove);
+			} catch (IOException e) {
+				failed += toRemove.size();
+				toRemove.clear();
+			}
+
+			toAdd.sort(null); // ids assigned in order of names
+			ArrayList<Integer> docIDs = new ArrayList<>();
+			ArrayList<File> docFilePaths = new ArrayList<>();
+			for (String name : toAdd) {
+				docIDs.add(didm.addDocument(name));
+				docFilePaths.add(new File(P3Utils.DocsDirectoryPath, name));
+			}
+			int added = 0;
+			if (!docIDs.isEmpty())
+				try {
+					BulkIndexingTask.IndexedPostings result = indexNewDocuments(docIDs, docFilePaths);
+					added = docIDs.size() - result.getFailedDocIDs().size();
+					failed += result.getFailedDocIDs().size();
+				} catch (IOException e) {
+					failed += docIDs.size();
+				}
+			checkpointIfNeeded();
+
+			if (added + toRemove.size() + refreshed + failed == 0)
+				return null;
+			return "Docs directory synchronized: " + added + " added, " + toRemove.size() + " removed, " + refreshed
+					+ " refreshed, " + failed + " failed.";
+		}
+	}
+
+	/**
+	 * Indexes again an indexed document whose file changed, with the lock of
+	 * additions and removals held. The file is tokenized, and the resulting
+	 * map of (word, locations) is compared with the one in its idx file:
+	 * 
+	 * - if they are the same, only the metadata of the document is updated
+	 * 
+	 * - if only locations differ, the words have the same frequencies, so the
+	 * mim object does not change: the idx file is replaced, the metadata
+	 * updated, and the cache of results emptied, since the matches of phrases
+	 * and NEAR operators may change
+	 * 
+	 * - otherwise, the new idx file is written under a pending name, the
+	 * change is written to the log and forced to disk, the pairs of the
+	 * document are replaced in the mim object (see
+	 * MainIndexManager.replacePairs()) and the pending idx file replaces the
+	 * previous one. If the system stops before that, it is renamed when the
+	 * log is replayed (see recover()); the pending name has the hash of the
+	 * new content, so that the file of a refresh that was not logged is never
+	 * taken.
+	 * 
+	 * The metadata of the first two cases is not logged: if lost, the
+	 * document is found out of date, and refreshed, again. Searches that began
+	 * before may read the new idx file of the document.
+	 * 
+	 * @param docID
+	 *            id of the document
 	 * @param docName
-	 *            name of document to verify
+	 *            name of the document
+	 * @return true if the pairs of the document changed, false otherwise
+	 * @throws IOException
+	 *             if there are problems with files; the document is left as
+	 *             it was, unless the new idx file could not be renamed
+	 * @throws IllegalArgumentException
+	 *             if the document has no idx file
+	 */
+	private boolean refreshDocument(int docID, String docName) throws IOException, IllegalArgumentException {
+		File docFilePath = new File(P3Utils.DocsDirectoryPath, docName);
+		// taken before the file is read (see addNewDocumentLocked())
+		DocumentMetadata read = DocumentMetadata.read(docFilePath);
+		Map<String, IntList> documentWordsMap = new Hashtable<>();
+		RandomAccessFile docFile = new RandomAccessFile(docFilePath, "r");
+		try {
+			fillMapFromDocumentText(documentWordsMap, docFile);
+		} finally {
+			docFile.close();
+		}
+		int numberOfWords = 0;
+		for (IntList locations : documentWordsMap.values())
+			numberOfWords += locations.size();
+		DocumentMetadata metadata = read.withNumberOfWords(numberOfWords);
+
+		// the map is compared with the one of the idx file
+		ArrayList<String> words = DocumentIDX.readWords(docID);
+		DocumentIDX previousIDX = new DocumentIDX(docID);
+		boolean sameFrequencies = words.size() == documentWordsMap.size();
+		boolean sameLocations = sameFrequencies;
+		for (Entry<String, IntList> e : documentWordsMap.entrySet()) {
+			if (!sameFrequencies)
+				break;
+			IntList previousLocations = previousIDX.getWordLocations(e.getKey());
+			if (previousLocations.size() != e.getValue().size())
+				sameFrequencies = sameLocations = false;
+			else if (!previousLocations.equals(e.getValue()))
+				sameLocations = false;
+		}
+
+		File idxFilePath = new File(P3Utils.IndexDirectoryPath, makeIDXName(docID));
+		DocumentMetadata previousMetadata = dsm.getMetadata(docID);
+		int generation = previousMetadata == null ? 0 : previousMetadata.getGeneration();
+		if (sameFrequencies) {
+			if (!sameLocations) {
+				DocumentIDX.writeIDXFile(idxFilePath, documentWordsMap);
+				dic.invalidate(docID);
+				qrc.invalidate(); // phrases and NEAR depend on locations
+			}
+			dsm.setMetadata(docID, metadata.withGeneration(generation));
+			return false;
+		}
+
+		File pendingPath = new File(P3Utils.IndexDirectoryPath, makePendingIDXName(docID, metadata.getHash()));
+		DocumentIDX.writeIDXFile(pendingPath, documentWordsMap);
+		Map<String, PostingList> postings = new Hashtable<>();
+		Map<String, Integer> frequencies = new Hashtable<>();
+		for (Entry<String, IntList> e : documentWordsMap.entrySet()) {
+			PostingList list = new PostingList(1);
+			list.add(docID, e.getValue().size());
+			postings.put(e.getKey(), list);
+			frequencies.put(e.getKey(), e.getValue().size());
+		}
+		try {
+			mim.replacePairs(docID, words, postings, newGeneration -> {
+				log.logUpdated(newGeneration, docID, docName, metadata.withGeneration(newGeneration), frequencies);
+				log.sync();
+				dsm.setMetadata(docID, metadata.withGeneration(newGeneration));
+			});
+		} catch (IOException e) {
+			pendingPath.delete();
+			throw e;
+		}
+		try {
+			P3Utils.replaceFile(pendingPath, idxFilePath);
+		} finally {
+			dic.invalidate(docID);
+			qrc.invalidate();
+		}
+		return true;
+	}
+
+	/**
+	 * Determines if the specified document is up to date, out of date (its
+	 * file changed since it was indexed), missing (its file is no longer in
+	 * the docs directory) or not added. The file is compared with the
+	 * metadata of the document in dsm (see DocumentMetadata.isUpToDate());
+	 * for documents indexed by previous versions of the system, which have
+	 * none, the time of its last modification is compared with that of its
+	 * idx file.
+	 * 
+	 * If the name is *, the status of every document is given: the docs
+	 * directory is listed once, in the same pass that gets the size and time
+	 * of last modification of its files, and every indexed document is looked
+	 * for in the listing; the files left are the documents not indexed.
+	 * 
+	 * @param docName
+	 *            name of document to verify, or *
 	 * 
 	 * @return String representation of result (file status)
 	 */
 	public String fileStatus(String docName) {
-		if (docName.equals("*")) { // display all documents status
-			if (didm.getDocNamesList().isEmpty())
-				return "No documents added";
-			for (String name : didm.getDocNamesList())
-				System.out.println(fileStatus(name));
-			return "";
-
-		} else {
-			if (!didm.getDocNamesList().contains(docName))
-				return "Document " + docName + " not added";
-			else {
-				String idxName = makeIDXName(didm.getDocNamesList().indexOf(docName) + 1);
-				if (mim.checkStatus(docName, idxName))
-					return "Document " + docName + " is up to date";
-				return "Document " + docName + " is out of date";
-			}
+		if (docName.equals("*")) // display all documents status
+			return collectionStatus();
+
+		int docID = didm.getDocID(docName);
+		if (docID == -1)
+			return "Document " + docName + " not added";
+		BasicFileAttributes attributes;
+		try {
+			attributes = Files.readAttributes(new File(P3Utils.DocsDirectoryPath, docName).toPath(),
+					BasicFileAttributes.class);
+		} catch (IOException e) {
+			attributes = null; // no such file
+		}
+		return "Document " + docName + " " + STATUSMESSAGES[documentStatus(docID, docName, attributes)];
+	}
+
+	/**
+	 * Gives the status of every document, indexed or in the docs directory,
+	 * followed by the number of documents in each status (see fileStatus()).
+	 * 
+	 * @return String representation of result (one line per document)
+	 */
+	private String collectionStatus() {
+		Map<String, BasicFileAttributes> files = listDocsDirectory();
+		StringBuilder result = new StringBuilder();
+		int[] counts = new int[STATUSMESSAGES.length];
+		ArrayList<String> docNamesList = didm.getDocNamesList();
+		for (int docID = 1; docID <= docNamesList.size(); docID++) {
+			String name = docNamesList.get(docID - 1);
+			if (name.equals(""))
+				continue; // free id
+			int status = documentStatus(docID, name, files.remove(name));
+			result.append("Document " + name + " " + STATUSMESSAGES[status] + "\n");
+			counts[status]++;
 		}
+		ArrayList<String> notIndexed = new ArrayList<>();
+		for (String name : files.keySet())
+			if (P3Utils.validFileName(name))
+				notIndexed.add(name);
+		notIndexed.sort(null);
+		for (String name : notIndexed)
+			result.append("Document " + name + " " + STATUSMESSAGES[NOTINDEXED] + "\n");
+		counts[NOTINDEXED] = notIndexed.size();
 
+		if (result.length() == 0)
+			return "No documents added";
+		return result.toString() + counts[UPTODATE] + " up to date, " + counts[OUTOFDATE] + " out of date, "
+				+ counts[MISSING] + " missing, " + counts[NOTINDEXED] + " not indexed.";
+	}
+
+	/**
+	 * Lists the files in the docs directory, getting their attributes in the
+	 * same pass.
+	 * 
+	 * @return map whose entries are (name of file, its attributes); empty if
+	 *         there is no docs directory
+	 */
+	private Map<String, BasicFileAttributes> listDocsDirectory() {
+		Map<String, BasicFileAttributes> files = new HashMap<>();
+		try {
+			Files.walkFileTree(P3Utils.DocsDirectoryPath.toPath(), EnumSet.noneOf(FileVisitOption.class), 1,
+					new SimpleFileVisitor<Path>() {
+						@Override
+						public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+							if (attributes.isRegularFile())
+								files.put(file.getFileName().toString(), attributes);
+							return FileVisitResult.CONTINUE;
+						}
+					});
+		} catch (IOException e) {
+			// no docs directory; every document is missing
+		}
+		return files;
+	}
+
+	/**
+	 * Determines the status of an indexed document (see fileStatus()).
+	 * 
+	 * @param docID
+	 *            id of the document
+	 * @param docName
+	 *            name of the document
+	 * @param attributes
+	 *            attributes of its file in the docs directory; null if there
+	 *            is none
+	 * @return UPTODATE, OUTOFDATE or MISSING
+	 */
+	private int documentStatus(int docID, String docName, BasicFileAttributes attributes) {
+		if (attributes == null)
+			return MISSING;
+		DocumentMetadata metadata = dsm.getMetadata(docID);
+		boolean upToDate;
+		if (metadata == null || metadata.getSize() == DocumentMetadata.UNKNOWN)
+			upToDate = mim.checkStatus(docName, makeIDXName(docID));
+		else {
+			DocumentMetadata current = metadata.checkUpToDate(new File(P3Utils.DocsDirectoryPath, docName),
+					attributes.size(), attributes.lastModifiedTime().toMillis());
+			if (current != null && current != metadata)
+				dsm.replaceMetadata(docID, metadata, current); // touched only
+			upToDate = current != null;
+		}
+		return upToDate ? UPTODATE : OUTOFDATE;
 	}
 
 	/**
 	 * Registers all data of the new document in mim structure. For each word in
 	 * the document, there will be a pair (docID, frequency) that will be added.
+	 * All the pairs are registered together, so searches see either all of
+	 * them or none. The addition is written to the log, and forced to disk,
+	 * before, and the metadata of the document is registered in dsm, with the
+	 * generation where its pairs go.
 	 * 
 	 * @param docID
 	 *            the id of the new document being added
+	 * @param docName
+	 *            name of the new document
+	 * @param metadata
+	 *            metadata of the document
 	 * @param documentWordsMap
 	 *            content of the document in a map with entries: (word, list of
 	 *            locations)
+	 * @throws IOException
+	 *             if the addition cannot be written to the log; then nothing
+	 *             is registered
 	 */
-	private void registerDataInMIM(int docID, Map<String, ArrayList<Integer>> documentWordsMap) {
-		for (Entry<String, ArrayList<Integer>> e : documentWordsMap.entrySet())
-			mim.registerWordInDocument(e.getKey(), docID, e.getValue().size());
-
+	private void registerDataInMIM(int docID, String docName, DocumentMetadata metadata,
+			Map<String, IntList> documentWordsMap) throws IOException {
+		Map<String, PostingList> postings = new Hashtable<>();
+		Map<String, Integer> frequencies = new Hashtable<>();
+		for (Entry<String, IntList> e : documentWordsMap.entrySet()) {
+			PostingList list = new PostingList(1);
+			list.add(docID, e.getValue().size());
+			postings.put(e.getKey(), list);
+			frequencies.put(e.getKey(), e.getValue().size());
+		}
+		mim.registerPostings(Collections.singleton(docID), postings, generation -> {
+			log.logAdded(generation, docID, docName, metadata.withGeneration(generation), frequencies);
+			log.sync();
+			dsm.setMetadata(docID, metadata.withGeneration(generation));
+		});
 	}
 
 	/**
@@ -233,21 +1130,12 @@ public class SystemController {
 	 * @throws IOException
 	 *             if there are problems with file: file format, etc.
 	 */
-	private void saveMapToIDXFile(int docID, Map<String, ArrayList<Integer>> documentWordsMap) throws IOException {
+	static void saveMapToIDXFile(int docID, Map<String, IntList> documentWordsMap) throws IOException {
 		String fName = makeIDXName(docID);
 		File idxFilePath = new File(P3Utils.IndexDirectoryPath, fName);
-		if (!idxFilePath.exists()) {
-			RandomAccessFile idxFile = new RandomAccessFile(idxFilePath, "rw");
-			for (Entry<String, ArrayList<Integer>> e : documentWordsMap.entrySet()) {
-				String word = e.getKey();
-				P3Utils.writeWordToFile(word, idxFile);
-				for (Integer location : e.getValue())
-					idxFile.writeInt(location);
-				idxFile.writeInt(-1); // marks the end of the list in the file
-			}
-
-			idxFile.close();
-		} else
+		if (!idxFilePath.exists())
+			DocumentIDX.writeIDXFile(idxFilePath, documentWordsMap);
+		else
 			throw new IllegalArgumentException("INTERNAL ERROR: An idx file exists for docid = " + docID);
 	}
 
@@ -266,12 +1154,12 @@ public class SystemController {
 	 * @param docFile
 	 *            the file where the document's content is located.
 	 */
-	private void fillMapFromDocumentText(Map<String, ArrayList<Integer>> documentWordsMap, RandomAccessFile docFile) {
+	static void fillMapFromDocumentText(Map<String, IntList> documentWordsMap, RandomAccessFile docFile) {
 		Document document = new Document(docFile);
 		for (WordInDocument wid : document) {
-			ArrayList<Integer> wordLocsList = documentWordsMap.get(wid.getWord());
+			IntList wordLocsList = documentWordsMap.get(wid.getWord());
 			if (wordLocsList == null) {
-				wordLocsList = new ArrayList<>();
+				wordLocsList = new IntList();
 				wordLocsList.add((int) wid.getLocation());
 				documentWordsMap.put(wid.getWord(), wordLocsList);
 			} else
@@ -281,91 +1169,261 @@ public class SystemController {
 	}
 
 	/**
-	 * Initiates the search for words in a given list.
+	 * Searches the documents that satisfy a query and ranks them. The query is
+	 * a list of words or wildcard patterns, combined with the operators AND,
+	 * OR, NOT and parentheses (see QueryParser); words are treated as in lower
+	 * case. Patterns are replaced by the words of the index that match them.
+	 * Only the k documents with the highest ranks are returned, and only their
+	 * idx files are read, to find the locations of the words. The result of
+	 * the search is taken from the cache of recent searches if there;
+	 * otherwise, it is computed and saved in the cache.
 	 * 
-	 * @param wtSearchList
-	 *            the list of words to search
-	 * @return A map whose entries are of the form: key = docID, value = list of
-	 *         locations in the particular document where one of the words in
-	 *         the search list begins (really, the index of its first byte in
-	 *         the file)
+	 * @param queryText
+	 *            the text of the query
+	 * @param k
+	 *            maximum number of documents returned; 0 for all of them
+	 * @return list of the (at most k) documents with the highest ranks among
+	 *         those that satisfy the query, in increasing order of rank
 	 * @throws IOException
 	 *             if there are problems with file: file format, etc.
 	 * @throws IllegalArgumentException
-	 *             may throw this exception if an error occurs when adding to
-	 *             the map of matching documents
+	 *             if the text is not a valid query, or if a pattern matches
+	 *             too many words
 	 */
-	public Map<Integer, MatchingSearchDocument> search(ArrayList<String> wtSearchList)
+	public ArrayList<MatchingSearchDocument> rankedSearch(String queryText, int k)
 			throws IllegalArgumentException, IOException {
-		Map<Integer, MatchingSearchDocument> matchingDocuments = new Hashtable<>();
+		Query query = QueryParser.parse(queryText);
+		String key = QueryResultCache.makeKey(query.toString(), k);
 
-		// mim is the MainIndexMaganer
-		// fills the map of matching documents with as many entries as documents
-		// containing at least one
-		// of the words in the search list. For each such document, it adds an
-		// entry composed of
-		// (docID, MatchingSearchDocument object). The search matching document
-		// corresponding to
-		// a particular documents in the map will also contain a list of all the
-		// words in the search
-		// list that it contains. All words as treated as in lower case
-		for (String word : wtSearchList) {
-			Iterable<Entry<Integer, Integer>> docAndWFEntry = mim.getDocsList(word.toLowerCase()); // pairs
-																									// (d,
-																									// f)
-																									// --
-																									// one
-																									// for
-																									// each
-																									// doc
-																									// containing
-																									// word
-			if (docAndWFEntry != null)
-				for (Entry<Integer, Integer> docFreqPair : docAndWFEntry)
-					addToMatchingDocumentsMap(matchingDocuments, docFreqPair.getKey(), word.toLowerCase());
+		long version = qrc.getVersion(); // before the snapshot is taken
+		// one snapshot for the whole search; the idx files of its documents,
+		// even of those found in the cache, are kept until it is released
+		QueryContext context = new QueryContext(mim);
+		ArrayList<MatchingSearchDocument> rankedDocuments = new ArrayList<>();
+		try {
+			ArrayList<QueryResultCache.RankedDocument> result = qrc.get(key);
+			if (result == null) {
+				query = query.rewrite(context); // patterns...
+				Map<String, Double> weights = new Hashtable<>();
+				query.collectWeights(weights);
+				rankedDocuments = rankMatchingDocuments(search(query, context), context, weights,
+						query.countProximityClauses(), k);
+				result = new ArrayList<>();
+				for (MatchingSearchDocument msd : rankedDocuments) {
+					msd.buildMatchingLocations(); // only idx files read
+					result.add(
+							new QueryResultCache.RankedDocument(msd.getDocID(), msd.getRank(), msd.getMatchingWords()));
+				}
+				qrc.put(key, result, version);
+			} else
+				for (QueryResultCache.RankedDocument rd : result) {
+					MatchingSearchDocument msd = new MatchingSearchDocument(rd.getDocID());
+					for (String word : rd.getMatchingWords())
+						msd.addMatchingWord(word);
+					msd.setRank(rd.getRank());
+					msd.buildMatchingLocations();
+					rankedDocuments.add(msd);
+				}
+		} finally {
+			context.close();
 		}
 
+		return rankedDocuments;
+	}
+
+	/**
+	 * Ranks the document matching the search with the established order. Only
+	 * the k documents with the highest ranks are kept, in a min-heap of size k
+	 * whose root is the lowest rank kept; so the documents are not sorted all
+	 * together. Ranks are computed from the frequencies in the main index and
+	 * the numbers of words in dsm; no idx file is read.
+	 * 
+	 * The default rank of a document is r / n plus the sum of the relative
+	 * frequencies of the r words of the search in the document. With BM25, it
+	 * is the sum of the BM25 weights of those words. Each word counts in r and
+	 * in the sums multiplied by its weight in the search, which is below 1
+	 * only for the words similar to a fuzzy word. If the search has
+	 * proximity clauses (phrases and NEAR operators), the rank is increased by
+	 * c / p plus the relative frequency of their occurrences, where c of the p
+	 * clauses occur in the document.
+	 * 
+	 * The number of documents that contain a word, for BM25, is counted in
+	 * the whole collection (the length of its list of pairs in the snapshot
+	 * of the search), not among the matching documents, which depend on the
+	 * operators of the query.
+	 * 
+	 * @param matchingDocuments
+	 *            map containing entries of docID and the matching document.
+	 * @param context
+	 *            context of the search, with its snapshot of the main index
+	 * @param weights
+	 *            map whose entries are (word, weight) for the n words in the
+	 *            search, not counting the negated ones
+	 * @param p
+	 *            number of proximity clauses in the search
+	 * @param k
+	 *            maximum number of documents ranked; 0 for all of them
+	 * @return a list with the ranked documents (in this case that list is in
+	 *         ascending order of ranks)
+	 */
+	private ArrayList<MatchingSearchDocument> rankMatchingDocuments(
+			Map<Integer, MatchingSearchDocument> matchingDocuments, QueryContext context, Map<String, Double> weights,
+			int p, int k) {
+		int n = weights.size();
+
+		// number of documents of the collection that contain each word, for
+		// BM25
+		Map<String, Integer> docFrequencies = new Hashtable<>();
+		if (bm25)
+			for (MatchingSearchDocument msd : matchingDocuments.values())
+				for (String word : msd.getMatchingWords())
+					if (!docFrequencies.containsKey(word))
+						docFrequencies.put(word, context.getDocsList(word).size());
+
+		if (k <= 0 || k > matchingDocuments.size())
+			k = matchingDocuments.size();
+		PriorityQueue<Entry<Double, MatchingSearchDocument>> ranking = new PriorityQueue<>(Math.max(k, 1),
+				new EntryComparator());
 		for (Entry<Integer, MatchingSearchDocument> e : matchingDocuments.entrySet()) {
-			MatchingSearchDocument smd = e.getValue();
-			smd.buildMatchingLocations();
+			ArrayList<String> kd = e.getValue().getMatchingWords();
+			IntList frequencies = e.getValue().getMatchingFrequencies();
+			int numberOfWords = dsm.getNumberOfWords(e.getKey());
+			double docRank;
+			if (bm25)
+				docRank = bm25Rank(kd, frequencies, numberOfWords, docFrequencies, weights);
+			else {
+				double r = 0; // number of words that match in this doc
+				double rd = 0;
+				for (int i = 0; i < kd.size(); i++) {
+					double weight = weights.getOrDefault(kd.get(i), 1.0);
+					r += weight;
+					// compute relative frequency
+					if (numberOfWords > 0)
+						rd += weight * frequencies.get(i) / numberOfWords;
+				}
+				double pd = n > 0 ? r / n : 0;
+				docRank = pd + rd;
+			}
+			MatchingSearchDocument msd = e.getValue();
+			if (p > 0 && msd.getProximityClauses() > 0) {
+				docRank += (double) msd.getProximityClauses() / p;
+				if (numberOfWords > 0)
+					docRank += (double) msd.getProximityOccurrences() / numberOfWords;
+			}
+			e.getValue().setRank(docRank);
+			Entry<Double, MatchingSearchDocument> entry = new AbstractMap.SimpleEntry<>(docRank, e.getValue());
+			// keep entry if among the k highest ranks seen so far
+			if (ranking.size() < k)
+				ranking.add(entry);
+			else if (ranking.comparator().compare(entry, ranking.peek()) > 0) {
+				ranking.poll();
+				ranking.add(entry);
+			}
 		}
+		// tranfer MatchingSearchDocuments to rankedDocuments, from the lowest
+		// rank kept to the highest, and end ranking process
+		ArrayList<MatchingSearchDocument> rankedDocuments = new ArrayList<>(ranking.size());
+		while (!ranking.isEmpty())
+			rankedDocuments.add(ranking.poll().getValue());
+		return rankedDocuments;
+	}
 
-		return matchingDocuments;
+	/**
+	 * Computes the BM25 rank of a document that matches a search.
+	 * 
+	 * @param words
+	 *            words of the search in the document
+	 * @param frequencies
+	 *            frequencies of those words in the document
+	 * @param numberOfWords
+	 *            number of words in the document; -1 if unknown
+	 * @param docFrequencies
+	 *            number of documents that contain each word
+	 * @param weights
+	 *            weight of each word in the search
+	 * @return the rank
+	 */
+	private double bm25Rank(ArrayList<String> words, IntList frequencies, int numberOfWords,
+			Map<String, Integer> docFrequencies, Map<String, Double> weights) {
+		double averageNumberOfWords = dsm.getAverageNumberOfWords();
+		double norm = 1; // document as long as the average one if unknown
+		if (numberOfWords >= 0 && averageNumberOfWords > 0)
+			norm = 1 - BM25B + BM25B * numberOfWords / averageNumberOfWords;
+		int numberOfDocs = Math.max(dsm.getNumberOfDocs(), 1);
+
+		double rank = 0;
+		for (int i = 0; i < words.size(); i++) {
+			int df = docFrequencies.get(words.get(i));
+			double idf = Math.log(1 + (numberOfDocs - df + 0.5) / (df + 0.5));
+			double f = frequencies.get(i);
+			rank += weights.getOrDefault(words.get(i), 1.0) * idf * f * (BM25K1 + 1) / (f + BM25K1 * norm);
+		}
+		return rank;
 	}
 
 	/**
-	 * To the collection of matching documents add entry for each matching
-	 * document, which includes entries consisting of the docID and a
-	 * corresponding object of type SearchMatchingDocument. This object will
-	 * contain the list of locations in the document that correspond to the
-	 * first character in any occurrence of any of the search words that have
-	 * been identified as belonging to the document.
+	 * Finds the documents that satisfy a query in the snapshot of the main
+	 * index of the given context. Only the main index is read; the locations
+	 * of the words in a matching document are not known until its
+	 * buildMatchingLocations method is called.
 	 * 
-	 * @param mdm
-	 *            Collection of matching documents, initially, an empty map.
-	 * @param docID
-	 *            the id number for the matching document
-	 * @param word
-	 *            the given word
-	 * @throws IllegalArgumentException
+	 * @param query
+	 *            the query, already rewritten (see Query.rewrite())
+	 * @param context
+	 *            context of the evaluation
+	 * @return A map whose entries are of the form: key = docID, value = the
+	 *         matching document, with the words of the query (not negated)
+	 *         that it contains and their frequencies, and the occurrences of
+	 *         the proximity clauses of the query
 	 * @throws IOException
+	 *             if there are problems with file: file format, etc.
 	 */
-	private void addToMatchingDocumentsMap(Map<Integer, MatchingSearchDocument> mdm, int docID, String word)
-			throws IllegalArgumentException, IOException {
-		MatchingSearchDocument docMD = mdm.get(docID);
-		if (docMD == null) {
-			docMD = new MatchingSearchDocument(docID);
-			mdm.put(docID, docMD);
+	private Map<Integer, MatchingSearchDocument> search(Query query, QueryContext context) throws IOException {
+		Map<Integer, MatchingSearchDocument> matchingDocuments = new Hashtable<>();
+
+		// the query is evaluated over the lists of pairs (d, f) of its words
+		// in mim, which are in increasing order of docID
+		IntList docIDs = query.evaluate(context);
+		for (int i = 0; i < docIDs.size(); i++) {
+			MatchingSearchDocument docMD = new MatchingSearchDocument(docIDs.get(i));
+			QueryContext.ProximityMatches matches = context.getProximityMatches(docIDs.get(i));
+			if (matches != null)
+				docMD.setProximityMatches(matches.getClauses(), matches.getOccurrences());
+			matchingDocuments.put(docIDs.get(i), docMD);
+		}
+
+		// each matching document gets the words of the query that it
+		// contains, with their frequencies in the document
+		ArrayList<String> words = new ArrayList<>();
+		query.collectWords(words);
+		for (String word : words) {
+			PostingList docAndWFEntry = context.getDocsList(word);
+			for (int i = 0; i < docAndWFEntry.size(); i++) {
+				MatchingSearchDocument docMD = matchingDocuments.get(docAndWFEntry.getDocID(i));
+				if (docMD != null)
+					docMD.addMatchingWord(word, docAndWFEntry.getFrequency(i));
+			}
 		}
-		docMD.addMatchingWord(word);
+
+		return matchingDocuments;
 	}
 
 	/**
 	 * Closes the SystemController object. Must be done when exiting the system.
+	 * A last checkpoint saves the changes in the files of the index.
 	 */
 	public void close() {
-		mim.close();
-		didm.close();
+		synchronized (updateLock) {
+			try {
+				checkpoint();
+			} catch (IOException e) {
+				e.printStackTrace(); // the log is kept, and replayed next time
+			}
+			mim.close();
+			didm.close();
+			dsm.close();
+			log.close();
+		}
 	}
 
 	/**
@@ -381,4 +1439,19 @@ public class SystemController {
 		return s;
 	}
 
+	/**
+	 * Makes the name of the idx file written for the new content of a
+	 * refreshed document, before it replaces its idx file (see
+	 * refreshDocument()).
+	 * 
+	 * @param docID
+	 *            the id of the document.
+	 * @param hash
+	 *            hash of the new content of its file
+	 * @return the name
+	 */
+	private static String makePendingIDXName(int docID, long hash) {
+		return makeIDXName(docID) + "." + Long.toHexString(hash) + ".new";
+	}
+
 }